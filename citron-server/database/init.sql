@@ -27,6 +27,27 @@ CREATE TABLE citron_spam__reported_hostname
 
 CREATE INDEX idx__wiki_id__created_at ON citron_spam__reported_hostname (wiki_id, created_at);
 
+-- Events replayed after a restart must not report the same hostname twice;
+-- existing databases get it from migrations/001_unique_reported_hostname.sql, which removes duplicates first
+CREATE UNIQUE INDEX unique__wiki_id__revision_id__hostname ON citron_spam__reported_hostname (wiki_id, revision_id, hostname);
+
+-- Scores of the candidate (shadow) model, kept next to the reported score and never reported on-wiki
+CREATE TABLE citron_spam__shadow_score
+(
+    reported_hostname_id  BIGINT PRIMARY KEY NOT NULL,
+    created_at            DATETIME           NOT NULL,
+    wiki_id               VARCHAR(20)        NOT NULL,
+    hostname              VARCHAR(255)       NOT NULL,
+    active_score          DOUBLE             NOT NULL,
+    active_model_number   TINYINT            NOT NULL,
+    active_latency_micros BIGINT             NOT NULL,
+    shadow_score          DOUBLE             NOT NULL,
+    shadow_model_number   TINYINT            NOT NULL,
+    shadow_latency_micros BIGINT             NOT NULL
+);
+
+CREATE INDEX idx__wiki_id__created_at ON citron_spam__shadow_score (wiki_id, created_at);
+
 CREATE TABLE citron_spam__feedback
 (
     id          BIGINT PRIMARY KEY NOT NULL,
@@ -41,3 +62,21 @@ CREATE TABLE citron_spam__feedback
 );
 
 CREATE INDEX idx__wiki_id__report_date ON citron_spam__feedback (wiki_id, report_date);
+
+-- Last event ID of each EventStreams stream that is safe to resume from, per shard (0 without clustering)
+CREATE TABLE citron_spam__stream_checkpoint
+(
+    stream        VARCHAR(100) NOT NULL,
+    shard         INT          NOT NULL,
+    last_event_id TEXT         NOT NULL,
+    updated_at    DATETIME     NOT NULL,
+    PRIMARY KEY (stream, shard)
+);
+
+-- Time-limited ownership of stream shards and TSID nodes, shared by all replicas
+CREATE TABLE citron_spam__lease
+(
+    name       VARCHAR(100) PRIMARY KEY NOT NULL,
+    owner      VARCHAR(255)             NOT NULL,
+    expires_at DATETIME(3)              NOT NULL
+);
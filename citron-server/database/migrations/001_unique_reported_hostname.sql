@@ -0,0 +1,26 @@
+-- Adds the unique index on reported hostnames to a database created before it existed.
+-- The index cannot be created while a revision has the same hostname reported more than once,
+-- so those duplicates are removed first, keeping the oldest report (TSIDs grow with time).
+-- Create the tables of init.sql that the database does not have yet before running this.
+
+USE `citron`;
+
+CREATE TEMPORARY TABLE kept_reported_hostname
+(
+    id BIGINT PRIMARY KEY NOT NULL
+)
+SELECT MIN(id) AS id
+FROM citron_spam__reported_hostname
+GROUP BY wiki_id, revision_id, hostname;
+
+DELETE
+FROM citron_spam__shadow_score
+WHERE reported_hostname_id NOT IN (SELECT id FROM kept_reported_hostname);
+
+DELETE
+FROM citron_spam__reported_hostname
+WHERE id NOT IN (SELECT id FROM kept_reported_hostname);
+
+DROP TEMPORARY TABLE kept_reported_hostname;
+
+CREATE UNIQUE INDEX unique__wiki_id__revision_id__hostname ON citron_spam__reported_hostname (wiki_id, revision_id, hostname);
@@ -1,9 +1,11 @@
 package io.github.plantaest.citron.client;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import io.github.plantaest.citron.dto.AllUsersResponse;
 import io.github.plantaest.citron.dto.UserGroupsResponse;
 import io.quarkus.rest.client.reactive.ClientFormParam;
 import io.quarkus.rest.client.reactive.ClientQueryParam;
+import io.smallrye.mutiny.Uni;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.GET;
@@ -15,6 +17,7 @@ import org.eclipse.microprofile.rest.client.annotation.ClientHeaderParam;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 import org.jboss.resteasy.reactive.RestForm;
 
+import java.util.HashMap;
 import java.util.Map;
 
 @RegisterRestClient
@@ -29,6 +32,14 @@ public interface WikiActionClient {
     @ClientQueryParam(name = "usprop", value = "groups")
     UserGroupsResponse getUserGroups(@QueryParam("ususers") String username);
 
+    // Ref: https://www.mediawiki.org/wiki/API:Allusers
+    // augroup takes several pipe-separated groups; aufrom continues from the previous page when set
+    @GET
+    @ClientQueryParam(name = "action", value = "query")
+    @ClientQueryParam(name = "list", value = "allusers")
+    @ClientQueryParam(name = "aulimit", value = "max")
+    AllUsersResponse getAllUsers(@QueryParam("augroup") String groups, @QueryParam("aufrom") String from);
+
     // Ref: https://www.mediawiki.org/wiki/API:Tokens#Response
     @GET
     @ClientQueryParam(name = "action", value = "query")
@@ -62,4 +73,36 @@ public interface WikiActionClient {
     @ClientFormParam(name = "action", value = "purge")
     JsonNode purge(@FormParam("titles") String titles);
 
+    // Non-blocking variants, retried with WikiRetry by the caller
+
+    @GET
+    @ClientQueryParam(name = "action", value = "query")
+    @ClientQueryParam(name = "list", value = "users")
+    @ClientQueryParam(name = "usprop", value = "groups")
+    Uni<UserGroupsResponse> getUserGroupsAsync(@QueryParam("ususers") String username);
+
+    @GET
+    @ClientQueryParam(name = "action", value = "query")
+    @ClientQueryParam(name = "meta", value = "tokens")
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<JsonNode> getCsrfTokenAsync();
+
+    // CsrfTokenInterceptor fetches the token with a blocking call, which must not happen on the event loop,
+    // so the token is fetched first and sent as a regular form parameter
+    default Uni<JsonNode> editAsync(Map<String, String> params) {
+        return getCsrfTokenAsync()
+                .map(response -> response.at("/query/tokens/csrftoken").asText())
+                .chain(csrfToken -> {
+                    Map<String, String> formParams = new HashMap<>(params);
+                    formParams.put("token", csrfToken);
+                    return editWithToken(formParams);
+                });
+    }
+
+    @POST
+    @ClientFormParam(name = "action", value = "edit")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<JsonNode> editWithToken(@RestForm Map<String, String> params);
+
 }
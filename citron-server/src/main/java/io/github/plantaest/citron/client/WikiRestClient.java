@@ -3,6 +3,7 @@ package io.github.plantaest.citron.client;
 import io.github.plantaest.citron.dto.CompareRevisionsResponse;
 import io.github.plantaest.citron.dto.WikiPageResponse;
 import io.github.plantaest.citron.dto.WikiRevisionResponse;
+import io.smallrye.mutiny.Uni;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
@@ -12,6 +13,8 @@ import org.eclipse.microprofile.faulttolerance.Retry;
 import org.eclipse.microprofile.rest.client.annotation.ClientHeaderParam;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 
+import java.io.InputStream;
+
 @RegisterRestClient
 @ClientHeaderParam(name = "User-Agent", value = "Citron/${citron.version} (plantaest@gmail.com)")
 public interface WikiRestClient {
@@ -34,4 +37,28 @@ public interface WikiRestClient {
     @Retry(maxRetries = 5, delay = 800, jitter = 200)
     WikiRevisionResponse getRevision(@PathParam("revisionId") long revisionId);
 
+    // Non-blocking variants, retried with WikiRetry by the caller
+
+    // Left undecoded so that DiffHostnameDecoder can read it as a token stream
+    @GET
+    @Path("/revision/{from}/compare/{to}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<byte[]> compareRevisionsRawAsync(@PathParam("from") long from, @PathParam("to") long to);
+
+    @GET
+    @Path("/page/{title}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<WikiPageResponse> getPageAsync(@PathParam("title") String title);
+
+    // Left unread so that RevisionSourceScanner can consume the source as it arrives
+    @GET
+    @Path("/revision/{revisionId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<InputStream> getRevisionStreamAsync(@PathParam("revisionId") long revisionId);
+
+    @GET
+    @Path("/revision/{revisionId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Uni<WikiRevisionResponse> getRevisionAsync(@PathParam("revisionId") long revisionId);
+
 }
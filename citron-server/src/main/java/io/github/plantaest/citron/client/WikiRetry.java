@@ -0,0 +1,36 @@
+package io.github.plantaest.citron.client;
+
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.WebApplicationException;
+
+import java.time.Duration;
+
+// Non-blocking counterpart of @Retry(maxRetries = 5, delay = 800, jitter = 200) for Uni-returning client calls:
+// the back-off is a timer rather than a sleeping worker thread.
+public final class WikiRetry {
+
+    private static final int MAX_RETRIES = 5;
+    private static final Duration DELAY = Duration.ofMillis(800);
+    private static final double JITTER = 0.25;
+
+    private WikiRetry() {}
+
+    // Use with Uni.plug, e.g. client.getRevisionAsync(id).plug(WikiRetry::withBackOff)
+    public static <T> Uni<T> withBackOff(Uni<T> uni) {
+        return uni.onFailure(WikiRetry::isRetryable)
+                .retry()
+                .withBackOff(DELAY, DELAY)
+                .withJitter(JITTER)
+                .atMost(MAX_RETRIES);
+    }
+
+    // Client errors such as a missing page or revision will not go away by asking again
+    private static boolean isRetryable(Throwable failure) {
+        if (failure instanceof WebApplicationException e) {
+            int status = e.getResponse().getStatus();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        return true;
+    }
+
+}
@@ -23,6 +23,12 @@ public interface WikimediaStreamsClient {
     @SseEventFilter(WikimediaStreamsFilter.class)
     Multi<SseEvent<String>> getRawRecentChanges(@HeaderParam("Last-Event-ID") String lastEventId);
 
+    @GET
+    @Path("/mediawiki.page-links-change")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @SseEventFilter(WikimediaStreamsFilter.class)
+    Multi<SseEvent<String>> getRawPageLinksChanges(@HeaderParam("Last-Event-ID") String lastEventId);
+
     class WikimediaStreamsFilter implements Predicate<SseEvent<String>> {
         @Override
         public boolean test(SseEvent<String> event) {
@@ -1,9 +1,18 @@
 package io.github.plantaest.citron.config;
 
+import ai.onnxruntime.OrtSession;
+import io.github.plantaest.citron.enumeration.IngestionMode;
+import io.github.plantaest.citron.enumeration.ModelBackend;
+import io.github.plantaest.citron.enumeration.ModelSource;
+import io.github.plantaest.citron.enumeration.ShardKey;
+import io.github.plantaest.citron.enumeration.ThreadMode;
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @ConfigMapping(prefix = "citron")
 public interface CitronConfig {
@@ -24,7 +33,36 @@ public interface CitronConfig {
     interface Model {
         String id();
 
+        int number();
+
         String path();
+
+        @WithDefault("classpath")
+        ModelSource source();
+
+        @WithDefault("onnxruntime")
+        ModelBackend backend();
+
+        Session session();
+
+        interface Session {
+            // Unset means onnxruntime picks one thread per physical core
+            Optional<Integer> intraOpThreads();
+
+            Optional<Integer> interOpThreads();
+
+            @WithDefault("all-opt")
+            OrtSession.SessionOptions.OptLevel optimizationLevel();
+
+            @WithDefault("true")
+            boolean cpuArenaAllocator();
+
+            @WithDefault("true")
+            boolean memoryPatternOptimization();
+
+            // Directory where graph-optimized models are saved and reused across restarts
+            Optional<String> optimizedModelCacheDir();
+        }
     }
 
     Classifier classifier();
@@ -48,7 +86,20 @@ public interface CitronConfig {
 
         String suspiciousTldsFilePath();
 
+        // Directory where the domain rank lists are saved as indexes and mapped on later starts
+        Optional<String> rankIndexCacheDir();
+
         String openPageRankApiKey();
+
+        Batching batching();
+
+        interface Batching {
+            boolean enabled();
+
+            int maxBatchSize();
+
+            Duration maxWait();
+        }
     }
 
     String ignoredSuffixesFilePath();
@@ -56,6 +107,64 @@ public interface CitronConfig {
     SpamModule spamModule();
 
     interface SpamModule {
+        @WithDefault("recent-changes")
+        IngestionMode ingestionMode();
+
+        // Events older than this are dropped once the stream has caught up
+        @WithDefault("5m")
+        Duration maxEventAge();
+
+        // Events older than this are dropped while catching up after a restart or reconnect
+        @WithDefault("24h")
+        Duration maxCatchUpAge();
+
+        @WithDefault("true")
+        boolean checkpointEnabled();
+
+        // How long user-group lookups are held back to be sent together in one request
+        @WithDefault("5ms")
+        Duration userGroupsBatchWindow();
+
+        // Scan the source of new pages while the revision response is being read instead of decoding it whole
+        @WithDefault("true")
+        boolean streamPageSource();
+
+        Pipeline pipeline();
+
+        interface Pipeline {
+            // Changes admitted into the pipeline at once; further events wait in the stream
+            @WithDefault("64")
+            int maxInFlight();
+
+            // Events received but not yet admitted, per subscription. EventStreams does not slow down for a
+            // full pipeline, so past this many the connection is dropped and resumed from the watermark
+            @WithDefault("10000")
+            int maxBufferedEvents();
+
+            // A slot is held while the lookup waits in a user groups batch, so this must be at least the
+            // batch size (50 names) for the coalescer to fill a batch
+            @WithDefault("50")
+            int userCheckConcurrency();
+
+            @WithDefault("8")
+            int diffFetchConcurrency();
+
+            @WithDefault("2")
+            int extractConcurrency();
+
+            @WithDefault("4")
+            int filterConcurrency();
+
+            @WithDefault("8")
+            int featureCollectionConcurrency();
+
+            @WithDefault("4")
+            int classifyConcurrency();
+
+            @WithDefault("2")
+            int persistConcurrency();
+        }
+
         Map<String, Wiki> wikis();
 
         interface Wiki {
@@ -65,12 +174,51 @@ public interface CitronConfig {
 
             List<String> ignoredUserGroups();
 
+            String modelId();
+
+            int modelNumber();
+
+            // Candidate model scored alongside the active model; its scores are stored but never reported
+            Optional<String> shadowModelId();
+
             String announcementPage();
 
             String announcementSection();
         }
     }
 
+    Cluster cluster();
+
+    interface Cluster {
+        @WithDefault("false")
+        boolean enabled();
+
+        @WithDefault("8")
+        int shardCount();
+
+        @WithDefault("revision")
+        ShardKey shardKey();
+
+        // Leases are renewed every 10 seconds
+        @WithDefault("30s")
+        Duration leaseDuration();
+    }
+
+    Execution execution();
+
+    interface Execution {
+        // Applies to the stream pipeline stages and to the per-wiki loops of the report and feedback runners
+        @WithDefault("platform")
+        ThreadMode threadMode();
+
+        // Virtual threads pinned to their carrier for longer than this are logged
+        @WithDefault("20ms")
+        Duration pinnedThreshold();
+
+        @WithDefault("4")
+        int maxConcurrentWikis();
+    }
+
     Dev dev();
 
     interface Dev {
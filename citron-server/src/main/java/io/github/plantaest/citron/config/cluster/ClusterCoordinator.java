@@ -0,0 +1,221 @@
+package io.github.plantaest.citron.config.cluster;
+
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.repository.LeaseRepository;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Splits stream work between replicas with leases in MariaDB. Every replica holds one node lease,
+// which gives it a distinct TSID node and doubles as its heartbeat, and a fair share of the shard
+// leases. Leases of a replica that stops renewing expire and are taken over by the others.
+// With clustering disabled, the replica works alone on a single shard 0.
+@Startup
+@Singleton
+public class ClusterCoordinator {
+
+    // TSID reserves 10 bits for the node by default
+    private static final int NODE_COUNT = 1024;
+    private static final String NODE_LEASE_PREFIX = "node-";
+    private static final String SHARD_LEASE_PREFIX = "shard-";
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    LeaseRepository leaseRepository;
+
+    private final String owner = Optional.ofNullable(System.getenv("HOSTNAME")).orElse("citron")
+            + "-" + UUID.randomUUID();
+    private final Set<Integer> shards = ConcurrentHashMap.newKeySet();
+    private volatile int node = -1;
+    private volatile boolean nodeLost;
+    private ShardListener shardListener;
+
+    @PostConstruct
+    void init() {
+        if (!citronConfig.cluster().enabled()) {
+            return;
+        }
+
+        for (int candidate = 0; candidate < NODE_COUNT && node < 0; candidate++) {
+            if (leaseRepository.tryAcquire(NODE_LEASE_PREFIX + candidate, owner, citronConfig.cluster().leaseDuration())) {
+                node = candidate;
+            }
+        }
+
+        if (node < 0) {
+            throw new IllegalStateException("No free TSID node lease is left");
+        }
+
+        Log.infof("Joined cluster as %s with TSID node %d", owner, node);
+        rebalance();
+    }
+
+    @PreDestroy
+    void cleanup() {
+        if (!citronConfig.cluster().enabled()) {
+            return;
+        }
+
+        // Released right away so other replicas take over without waiting for the leases to expire
+        synchronized (this) {
+            for (int shard : shards) {
+                release(shard);
+            }
+        }
+        leaseRepository.release(NODE_LEASE_PREFIX + node, owner);
+    }
+
+    // Empty when clustering is disabled, in which case the fixed node is used
+    public Optional<Integer> getNode() {
+        return node < 0 ? Optional.empty() : Optional.of(node);
+    }
+
+    // Once set, nothing may be created with the TSID node anymore, as another replica now holds it
+    public boolean hasLostNode() {
+        return nodeLost;
+    }
+
+    public int shardOf(String wikiId, long revisionId) {
+        if (!citronConfig.cluster().enabled()) {
+            return 0;
+        }
+
+        int shardCount = citronConfig.cluster().shardCount();
+        return switch (citronConfig.cluster().shardKey()) {
+            case WIKI -> Math.floorMod(wikiId.hashCode(), shardCount);
+            case REVISION -> (int) Math.floorMod(revisionId, (long) shardCount);
+        };
+    }
+
+    public boolean owns(int shard) {
+        return citronConfig.cluster().enabled() ? shards.contains(shard) : shard == 0;
+    }
+
+    public boolean owns(String wikiId, long revisionId) {
+        return owns(shardOf(wikiId, revisionId));
+    }
+
+    public Set<Integer> getShards() {
+        return citronConfig.cluster().enabled() ? Set.copyOf(shards) : Set.of(0);
+    }
+
+    // Returns the shards held right now; the listener is told about every change after that
+    public synchronized Set<Integer> watchShards(ShardListener shardListener) {
+        this.shardListener = shardListener;
+        return getShards();
+    }
+
+    public synchronized void unwatchShards() {
+        this.shardListener = null;
+    }
+
+    @Scheduled(every = "10s", delayed = "10s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void renew() {
+        if (!citronConfig.cluster().enabled() || nodeLost) {
+            return;
+        }
+
+        try {
+            if (!leaseRepository.renew(NODE_LEASE_PREFIX + node, owner, citronConfig.cluster().leaseDuration())
+                    && !leaseRepository.tryAcquire(NODE_LEASE_PREFIX + node, owner, citronConfig.cluster().leaseDuration())) {
+                loseNode();
+                return;
+            }
+            rebalance();
+        } catch (Exception e) {
+            Log.errorf("Unable to renew cluster leases: %s", e.getMessage());
+        }
+    }
+
+    // IDs created from now on could collide with those of the replica that took the node over, and
+    // reports saved with them would be silently dropped. The shards are handed back so that no more
+    // changes are processed, and the application exits to be restarted with a node of its own.
+    private synchronized void loseNode() {
+        nodeLost = true;
+        Log.errorf("Lost TSID node %d lease to another replica, shutting down", node);
+
+        for (int shard : shards) {
+            shards.remove(shard);
+            notify(shard, listener -> listener.shardLost(shard));
+            leaseRepository.release(SHARD_LEASE_PREFIX + shard, owner);
+        }
+
+        Quarkus.asyncExit(1);
+    }
+
+    private synchronized void rebalance() {
+        var leaseDuration = citronConfig.cluster().leaseDuration();
+        int shardCount = citronConfig.cluster().shardCount();
+
+        for (int shard : shards) {
+            if (!leaseRepository.renew(SHARD_LEASE_PREFIX + shard, owner, leaseDuration)) {
+                shards.remove(shard);
+                notify(shard, listener -> listener.shardLost(shard));
+            }
+        }
+
+        int members = Math.max(1, leaseRepository.countActive(NODE_LEASE_PREFIX));
+        int fairShare = (shardCount + members - 1) / members;
+
+        // Hand back surplus shards when a replica joins, so it can pick them up on its next renewal
+        for (int shard : shards) {
+            if (shards.size() <= fairShare) {
+                break;
+            }
+            release(shard);
+        }
+
+        Set<Integer> acquiredShards = new TreeSet<>();
+        for (int shard = 0; shard < shardCount && shards.size() < fairShare; shard++) {
+            if (!shards.contains(shard) && leaseRepository.tryAcquire(SHARD_LEASE_PREFIX + shard, owner, leaseDuration)) {
+                shards.add(shard);
+                acquiredShards.add(shard);
+            }
+        }
+
+        // Shards whose work cannot be taken over are handed back, to be tried again on the next renewal
+        if (!acquiredShards.isEmpty() && !notify(acquiredShards, listener -> listener.shardsAcquired(acquiredShards))) {
+            for (int shard : acquiredShards) {
+                shards.remove(shard);
+                leaseRepository.release(SHARD_LEASE_PREFIX + shard, owner);
+            }
+        }
+
+        Log.debugf("Holding %d of %d shards (%d replicas): %s", shards.size(), shardCount, members, shards);
+    }
+
+    private void release(int shard) {
+        // Released even if the listener fails; the next holder then resumes from an older checkpoint
+        notify(shard, listener -> listener.shardReleasing(shard));
+        shards.remove(shard);
+        leaseRepository.release(SHARD_LEASE_PREFIX + shard, owner);
+    }
+
+    private boolean notify(Object handedOverShards, Consumer<ShardListener> notification) {
+        if (shardListener == null) {
+            return true;
+        }
+
+        try {
+            notification.accept(shardListener);
+            return true;
+        } catch (Exception e) {
+            Log.errorf("Unable to hand over shards %s: %s", handedOverShards, e.getMessage());
+            return false;
+        }
+    }
+
+}
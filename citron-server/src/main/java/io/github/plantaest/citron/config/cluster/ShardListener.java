@@ -0,0 +1,18 @@
+package io.github.plantaest.citron.config.cluster;
+
+import java.util.Set;
+
+// Told about the shards this replica starts or stops handling, so that their work can be handed over
+public interface ShardListener {
+
+    // The shards are held, and their changes are handled from now on. Shards taken over in one
+    // rebalance come together, so that those left at the same checkpoint can be replayed at once
+    void shardsAcquired(Set<Integer> shards);
+
+    // The shard is still held, and is handed back to the other replicas once this returns
+    void shardReleasing(int shard);
+
+    // The lease expired and another replica may already hold the shard, so nothing may be saved for it
+    void shardLost(int shard);
+
+}
@@ -0,0 +1,90 @@
+package io.github.plantaest.citron.config.execution;
+
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.enumeration.ThreadMode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Watches for virtual threads that stay pinned to their carrier (blocking inside synchronized
+// code or a native call), which would quietly turn the virtual thread mode back into a small pool.
+// Each pinning site is logged with its stack once; later occurrences only bump the counter.
+@Startup
+@Singleton
+public class VirtualThreadDiagnostics {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private Counter pinnedCounter;
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    void init() {
+        if (citronConfig.execution().threadMode() != ThreadMode.VIRTUAL) {
+            return;
+        }
+
+        pinnedCounter = meterRegistry.counter("citron.virtual-thread.pinned");
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT)
+                .withThreshold(citronConfig.execution().pinnedThreshold())
+                .withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+
+        Log.infof("Watching for virtual threads pinned longer than %s", citronConfig.execution().pinnedThreshold());
+    }
+
+    @PreDestroy
+    void cleanup() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+
+        var stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return;
+        }
+
+        // The first frame outside the JDK is usually the code holding the monitor
+        String site = stackTrace.getFrames().stream()
+                .map(VirtualThreadDiagnostics::format)
+                .filter(frame -> !frame.startsWith("java.") && !frame.startsWith("jdk."))
+                .findFirst()
+                .orElse(format(stackTrace.getFrames().getFirst()));
+
+        if (reportedSites.add(site)) {
+            Log.warnf("Virtual thread pinned for %d ms at %s\n%s", event.getDuration().toMillis(), site,
+                    String.join("\n", stackTrace.getFrames().stream()
+                            .map(frame -> "\tat " + format(frame))
+                            .toList()));
+        }
+    }
+
+    private static String format(RecordedFrame frame) {
+        var method = frame.getMethod();
+        return "%s.%s:%d".formatted(method.getType().getName(), method.getName(), frame.getLineNumber());
+    }
+
+}
@@ -0,0 +1,220 @@
+package io.github.plantaest.citron.config.model;
+
+import ai.onnxruntime.OnnxJavaType;
+import ai.onnxruntime.OnnxMap;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.SequenceInfo;
+import ai.onnxruntime.TensorInfo;
+import io.quarkus.logging.Log;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A model whose ONNX session is built once and shared by every classification.
+// OrtSession.run is thread-safe, so a single session serves all executor threads.
+// When a newer version is swapped in, the session is closed only after the last
+// classification that acquired it has released it.
+public final class LoadedModel implements AutoCloseable {
+
+    private final String id;
+    private final int number;
+    private final OrtSession session;
+    private final String inputName;
+    // Feature count declared by the input shape, or -1 when the dimension is dynamic
+    private final int inputColumns;
+    private final String labelOutputName;
+    private final String probabilityOutputName;
+    // True when probabilities come out of a ZipMap node as a sequence of maps
+    // instead of a plain [N, classes] float tensor
+    private final boolean zipMapOutput;
+    // Set when the model is served by the pure-Java tree ensemble backend
+    private volatile TreeEnsembleEvaluator treeEnsemble;
+    // One reference is held by ModelManager while the model is current, plus one per in-flight classification
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    LoadedModel(String id, int number, OrtSession session) throws OrtException {
+        this.id = id;
+        this.number = number;
+        this.session = session;
+        this.inputName = session.getInputNames().iterator().next();
+
+        long[] inputShape = session.getInputInfo().get(inputName).getInfo() instanceof TensorInfo inputInfo
+                ? inputInfo.getShape()
+                : new long[0];
+        this.inputColumns = inputShape.length == 2 && inputShape[1] > 0 ? (int) inputShape[1] : -1;
+
+        String labelOutputName = null;
+        String probabilityOutputName = null;
+        boolean zipMapOutput = false;
+
+        for (var output : session.getOutputInfo().entrySet()) {
+            var info = output.getValue().getInfo();
+            if (info instanceof TensorInfo tensorInfo && tensorInfo.type == OnnxJavaType.INT64) {
+                labelOutputName = output.getKey();
+            } else if (info instanceof TensorInfo tensorInfo && tensorInfo.type == OnnxJavaType.FLOAT) {
+                probabilityOutputName = output.getKey();
+            } else if (info instanceof SequenceInfo) {
+                probabilityOutputName = output.getKey();
+                zipMapOutput = true;
+            }
+        }
+
+        if (labelOutputName == null || probabilityOutputName == null) {
+            throw new IllegalStateException("Model '%s' must output a label tensor and class probabilities"
+                    .formatted(id));
+        }
+
+        this.labelOutputName = labelOutputName;
+        this.probabilityOutputName = probabilityOutputName;
+        this.zipMapOutput = zipMapOutput;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public int number() {
+        return number;
+    }
+
+    public OrtSession session() {
+        return session;
+    }
+
+    public String inputName() {
+        return inputName;
+    }
+
+    public int inputColumns() {
+        return inputColumns;
+    }
+
+    public String labelOutputName() {
+        return labelOutputName;
+    }
+
+    public String probabilityOutputName() {
+        return probabilityOutputName;
+    }
+
+    public boolean zipMapOutput() {
+        return zipMapOutput;
+    }
+
+    public TreeEnsembleEvaluator treeEnsemble() {
+        return treeEnsemble;
+    }
+
+    void useTreeEnsemble(TreeEnsembleEvaluator treeEnsemble) {
+        this.treeEnsemble = treeEnsemble;
+    }
+
+    // Classifies rows x columns features laid out row by row from the start of the buffer
+    public Predictions predict(FloatBuffer features, int rows, int columns) throws OrtException {
+        var evaluator = treeEnsemble;
+        return evaluator != null
+                ? evaluate(evaluator, features, rows, columns)
+                : runSession(features, rows, columns);
+    }
+
+    static Predictions evaluate(TreeEnsembleEvaluator evaluator, FloatBuffer features, int rows, int columns) {
+        long[] labels = new long[rows];
+        float[] probs = new float[rows];
+
+        for (int i = 0; i < rows; i++) {
+            float score = evaluator.score(features, i * columns);
+            labels[i] = evaluator.label(score);
+            probs[i] = evaluator.probability(score);
+        }
+
+        return new Predictions(labels, probs);
+    }
+
+    Predictions runSession(FloatBuffer features, int rows, int columns) throws OrtException {
+        var env = OrtEnvironment.getEnvironment();
+        long[] shape = {rows, columns};
+
+        try (var tensor = OnnxTensor.createTensor(env, features, shape);
+             OrtSession.Result results = session.run(Map.of(inputName, tensor))) {
+            var labelValue = results.get(labelOutputName);
+            var probabilityValue = results.get(probabilityOutputName);
+
+            if (labelValue.isEmpty() || probabilityValue.isEmpty()) {
+                throw new IllegalStateException("Model '%s' returned no label or probability output".formatted(id));
+            }
+
+            LongBuffer labelBuffer = ((OnnxTensor) labelValue.get()).getLongBuffer();
+            long[] labels = new long[rows];
+            labelBuffer.get(labels);
+
+            float[] probs = zipMapOutput
+                    ? readZipMapProbabilities(probabilityValue.get().getValue())
+                    : readTensorProbabilities((OnnxTensor) probabilityValue.get());
+
+            return new Predictions(labels, probs);
+        }
+    }
+
+    // Reads the positive class column from a plain [N, classes] probability tensor,
+    // as produced by models exported without ZipMap
+    private static float[] readTensorProbabilities(OnnxTensor tensor) {
+        long[] shape = tensor.getInfo().getShape();
+        int rows = (int) shape[0];
+        int columns = (int) shape[1];
+        FloatBuffer buffer = tensor.getFloatBuffer();
+        float[] probs = new float[rows];
+
+        for (int i = 0; i < rows; i++) {
+            probs[i] = buffer.get(i * columns + 1);
+        }
+
+        return probs;
+    }
+
+    private static float[] readZipMapProbabilities(Object value) throws OrtException {
+        @SuppressWarnings("unchecked")
+        var onnxProbs = (List<OnnxMap>) value;
+        float[] probs = new float[onnxProbs.size()];
+
+        for (int i = 0; i < probs.length; i++) {
+            probs[i] = (float) onnxProbs.get(i).getValue().get(1L);
+        }
+
+        return probs;
+    }
+
+    // Fails once the model has been retired and its session closed (or is about to be)
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                close();
+            } catch (OrtException e) {
+                Log.errorf("Unable to close session of model '%s': %s", id, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws OrtException {
+        session.close();
+    }
+
+}
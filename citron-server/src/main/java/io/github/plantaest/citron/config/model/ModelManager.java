@@ -1,39 +1,437 @@
 package io.github.plantaest.citron.config.model;
 
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
 import io.github.plantaest.citron.config.CitronConfig;
-import io.github.plantaest.citron.enumeration.Model;
+import io.github.plantaest.citron.enumeration.ModelBackend;
+import io.github.plantaest.citron.enumeration.ModelSource;
+import io.quarkus.logging.Log;
 import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Startup
 @Singleton
 public class ModelManager {
 
+    private static final long PARITY_FIXTURE_SEED = 20241229L;
+    private static final long WARM_UP_SEED = 20250101L;
+    private static final int WARM_UP_ROUNDS = 20;
+
     @Inject
     CitronConfig citronConfig;
 
-    private final Map<String, byte[]> models = new ConcurrentHashMap<>();
+    // Current version of each model; replaced atomically when a newer version has been loaded and warmed up
+    private final Map<String, LoadedModel> models = new ConcurrentHashMap<>();
+    // Size and modification time of file-based models, used to detect new versions
+    private final Map<String, ModelFile> modelFiles = new ConcurrentHashMap<>();
+    private final Map<String, String> wikiModelIds = new ConcurrentHashMap<>();
+    private final Map<String, String> wikiShadowModelIds = new ConcurrentHashMap<>();
+
+    private record ModelFile(long size, FileTime lastModifiedTime) {}
 
     @PostConstruct
-    void init() throws IOException {
+    void init() throws IOException, OrtException {
+        for (var model : citronConfig.models()) {
+            if (model.source() != ModelSource.CLASSPATH) {
+                modelFiles.put(model.id(), readModelFile(Path.of(model.path())));
+            }
+            var loadedModel = load(model);
+            if (loadedModel != null) {
+                models.put(model.id(), loadedModel);
+            }
+        }
+
+        for (var wiki : citronConfig.spamModule().wikis().values()) {
+            var model = citronConfig.models().stream()
+                    .filter(m -> m.id().equals(wiki.modelId()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Wiki '%s' uses unknown model '%s'"
+                            .formatted(wiki.wikiId(), wiki.modelId())));
+            // Checked against the number actually loaded, which the model file may override
+            var loadedModel = models.get(model.id());
+            int number = loadedModel != null ? loadedModel.number() : model.number();
+            if (number != wiki.modelNumber()) {
+                throw new IllegalStateException("Wiki '%s' expects model '%s' number %d but number %d is loaded"
+                        .formatted(wiki.wikiId(), model.id(), wiki.modelNumber(), number));
+            }
+            wikiModelIds.put(wiki.wikiId(), wiki.modelId());
+
+            if (wiki.shadowModelId().isPresent()) {
+                var shadowModelId = wiki.shadowModelId().get();
+                if (citronConfig.models().stream().noneMatch(m -> m.id().equals(shadowModelId))) {
+                    throw new IllegalStateException("Wiki '%s' uses unknown shadow model '%s'"
+                            .formatted(wiki.wikiId(), shadowModelId));
+                }
+                wikiShadowModelIds.put(wiki.wikiId(), shadowModelId);
+            }
+        }
+    }
+
+    @PreDestroy
+    void cleanup() {
+        models.values().forEach(LoadedModel::release);
+        models.clear();
+    }
+
+    public String getModelId(String wikiId) {
+        var modelId = wikiModelIds.get(wikiId);
+
+        if (modelId == null) {
+            throw new IllegalStateException("No model is configured for wiki: " + wikiId);
+        }
+
+        return modelId;
+    }
+
+    public Optional<String> getShadowModelId(String wikiId) {
+        return Optional.ofNullable(wikiShadowModelIds.get(wikiId));
+    }
+
+    // The caller must release the returned model once it is done with it
+    public LoadedModel acquire(String modelId) {
+        while (true) {
+            var loadedModel = models.get(modelId);
+
+            if (loadedModel == null) {
+                throw new IllegalStateException("Model is not loaded: " + modelId);
+            }
+
+            // Only fails if the model was swapped out in between, in which case the new version is picked up
+            if (loadedModel.acquire()) {
+                return loadedModel;
+            }
+        }
+    }
+
+    // Picks up new versions of file-based models. The file should be replaced atomically (e.g. renamed into place);
+    // the new version is loaded and warmed up on this thread while the current version keeps serving.
+    @Scheduled(every = "1m", delayed = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reloadChangedModels() {
         for (var model : citronConfig.models()) {
+            if (model.source() == ModelSource.CLASSPATH) {
+                continue;
+            }
+
+            try {
+                var modelFile = readModelFile(Path.of(model.path()));
+                // Recorded before loading, so a broken file is not retried until it changes again
+                if (!modelFile.equals(modelFiles.put(model.id(), modelFile))) {
+                    reload(model);
+                }
+            } catch (Exception e) {
+                Log.errorf("Unable to reload model '%s', keeping the current version: %s", model.id(), e.getMessage());
+            }
+        }
+    }
+
+    private void reload(CitronConfig.Model model) throws IOException, OrtException {
+        var loadedModel = load(model);
+
+        if (loadedModel == null) {
+            return;
+        }
+
+        // Reports store the model number, so a version a wiki is not pinned to must not serve it
+        var pinningWiki = citronConfig.spamModule().wikis().values().stream()
+                .filter(wiki -> wiki.modelId().equals(model.id()) && wiki.modelNumber() != loadedModel.number())
+                .findFirst();
+
+        if (pinningWiki.isPresent()) {
+            loadedModel.release();
+            Log.errorf("Rejected model '%s' number %d because wiki '%s' is pinned to number %d, "
+                            + "keeping the current version", model.id(), loadedModel.number(),
+                    pinningWiki.get().wikiId(), pinningWiki.get().modelNumber());
+            return;
+        }
+
+        var previous = models.put(model.id(), loadedModel);
+        if (previous != null) {
+            previous.release();
+        }
+
+        Log.infof("Swapped model '%s' from number %s to number %d", model.id(),
+                previous == null ? "-" : previous.number(), loadedModel.number());
+    }
+
+    private LoadedModel load(CitronConfig.Model model) throws IOException, OrtException {
+        var env = OrtEnvironment.getEnvironment();
+        var modelBuffer = readModel(model);
+
+        if (modelBuffer == null) {
+            return null;
+        }
+
+        // A version embedded in the model takes precedence, so a new version can be rolled out by replacing the file
+        long modelVersion = OnnxGraphReader.readModelVersion(modelBuffer);
+        int number = modelVersion > 0 ? (int) modelVersion : model.number();
+
+        var session = createSession(env, model, modelBuffer);
+        LoadedModel loadedModel;
+        try {
+            loadedModel = new LoadedModel(model.id(), number, session);
+        } catch (OrtException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+
+        try {
+            if (model.backend() == ModelBackend.TREE_ENSEMBLE) {
+                compileTreeEnsemble(loadedModel, modelBuffer);
+            }
+            warmUp(loadedModel);
+        } catch (OrtException | RuntimeException e) {
+            loadedModel.release();
+            throw e;
+        }
+
+        Log.infof("Loaded model '%s' number %d from %s (%s)", model.id(), number, model.path(), model.source());
+        return loadedModel;
+    }
+
+    private static ModelFile readModelFile(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return new ModelFile(-1, FileTime.fromMillis(0));
+        }
+
+        return new ModelFile(Files.size(path), Files.getLastModifiedTime(path));
+    }
+
+    // Classpath models are read into the heap; file-based models are mapped read-only,
+    // which leaves the bytes in the page cache instead of on the heap
+    private ByteBuffer readModel(CitronConfig.Model model) throws IOException {
+        if (model.source() == ModelSource.CLASSPATH) {
             try (var inputStream = getClass().getClassLoader().getResourceAsStream(model.path())) {
-                if (inputStream != null) {
-                    models.put(model.id(), inputStream.readAllBytes());
+                return inputStream == null ? null : ByteBuffer.wrap(inputStream.readAllBytes());
+            }
+        }
+
+        var path = Path.of(model.path());
+
+        if (!Files.isRegularFile(path)) {
+            Log.errorf("Model file of '%s' does not exist: %s", model.id(), path);
+            return null;
+        }
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private OrtSession createSession(OrtEnvironment env, CitronConfig.Model model, ByteBuffer modelBuffer)
+            throws IOException, OrtException {
+        var sessionConfig = model.session();
+
+        try (var sessionOptions = new OrtSession.SessionOptions()) {
+            if (sessionConfig.intraOpThreads().isPresent()) {
+                sessionOptions.setIntraOpNumThreads(sessionConfig.intraOpThreads().get());
+            }
+            if (sessionConfig.interOpThreads().isPresent()) {
+                sessionOptions.setInterOpNumThreads(sessionConfig.interOpThreads().get());
+            }
+            sessionOptions.setCPUArenaAllocator(sessionConfig.cpuArenaAllocator());
+            sessionOptions.setMemoryPatternOptimization(sessionConfig.memoryPatternOptimization());
+
+            var optimizationLevel = sessionConfig.optimizationLevel();
+
+            if (sessionConfig.optimizedModelCacheDir().isEmpty()
+                    || optimizationLevel == OrtSession.SessionOptions.OptLevel.NO_OPT) {
+                sessionOptions.setOptimizationLevel(optimizationLevel);
+                return createSession(env, model, modelBuffer, sessionOptions);
+            }
+
+            var cacheDir = Path.of(sessionConfig.optimizedModelCacheDir().get());
+            var cachedModel = cacheDir.resolve("%s-%s-%s.onnx".formatted(
+                    model.id(), optimizationLevel.name().toLowerCase(), sha256(modelBuffer)));
+
+            // The cached model is already optimized, so graph optimization is skipped when loading it
+            if (Files.isRegularFile(cachedModel)) {
+                sessionOptions.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.NO_OPT);
+                try {
+                    var session = env.createSession(cachedModel.toString(), sessionOptions);
+                    Log.infof("Loaded optimized model '%s' from cache %s", model.id(), cachedModel);
+                    return session;
+                } catch (OrtException e) {
+                    Log.warnf("Unable to load cached optimized model %s, optimizing again: %s",
+                            cachedModel, e.getMessage());
+                    Files.deleteIfExists(cachedModel);
                 }
             }
+
+            // Written under a temporary name and moved into place once complete,
+            // so another replica or an interrupted start never reads a partial file
+            Files.createDirectories(cacheDir);
+            var partialModel = Files.createTempFile(cacheDir, model.id() + "-", ".onnx.partial");
+            sessionOptions.setOptimizationLevel(optimizationLevel);
+            sessionOptions.setOptimizedModelFilePath(partialModel.toString());
+            OrtSession session;
+            try {
+                session = createSession(env, model, modelBuffer, sessionOptions);
+            } catch (OrtException e) {
+                Files.deleteIfExists(partialModel);
+                throw e;
+            }
+
+            try {
+                Files.move(partialModel, cachedModel, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Log.infof("Saved optimized model '%s' to cache %s", model.id(), cachedModel);
+            } catch (IOException e) {
+                Log.warnf("Unable to save optimized model '%s' to cache: %s", model.id(), e.getMessage());
+                Files.deleteIfExists(partialModel);
+            }
+
+            return session;
+        }
+    }
+
+    private static OrtSession createSession(OrtEnvironment env, CitronConfig.Model model, ByteBuffer modelBuffer,
+                                            OrtSession.SessionOptions sessionOptions) throws OrtException {
+        return switch (model.source()) {
+            case CLASSPATH -> env.createSession(modelBuffer.array(), sessionOptions);
+            case FILE -> env.createSession(model.path(), sessionOptions);
+            case MMAP -> env.createSession(modelBuffer, sessionOptions);
+        };
+    }
+
+    private static String sha256(ByteBuffer modelBuffer) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelBuffer.duplicate());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Serves the model from the pure-Java evaluator only when it reproduces onnxruntime bit for bit;
+    // otherwise the onnxruntime session keeps serving it
+    private void compileTreeEnsemble(LoadedModel loadedModel, ByteBuffer modelBytes) throws OrtException {
+        TreeEnsembleEvaluator evaluator;
+
+        try {
+            evaluator = TreeEnsembleEvaluator.compile(modelBytes);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            Log.warnf("Model '%s' cannot use the tree ensemble backend, keeping onnxruntime: %s",
+                    loadedModel.id(), e.getMessage());
+            return;
+        }
+
+        int columns = loadedModel.inputColumns() > 0 ? loadedModel.inputColumns() : evaluator.featureCount();
+        float[][] fixtures = evaluator.parityFixtures(columns, PARITY_FIXTURE_SEED);
+        int mismatches = countMismatches(loadedModel, evaluator, fixtures, columns);
+
+        if (mismatches > 0) {
+            // onnxruntime splits large ensembles across intra-op threads, which changes the summation order
+            Log.warnf("Tree ensemble backend of model '%s' differs from onnxruntime on %d fixture rows, "
+                            + "keeping onnxruntime (running onnxruntime with one intra-op thread may restore parity)",
+                    loadedModel.id(), mismatches);
+            return;
+        }
+
+        loadedModel.useTreeEnsemble(evaluator);
+        Log.infof("Model '%s' uses the tree ensemble backend (parity verified on %d fixture rows)",
+                loadedModel.id(), fixtures.length);
+    }
+
+    // Runs a few single-row and full-batch predictions on synthetic rows, so the first real changes
+    // do not pay for lazy initialization in onnxruntime or for JIT compilation of the evaluator
+    private void warmUp(LoadedModel loadedModel) throws OrtException {
+        var evaluator = loadedModel.treeEnsemble();
+        int columns = loadedModel.inputColumns() > 0
+                ? loadedModel.inputColumns()
+                : evaluator != null ? evaluator.featureCount() : -1;
+
+        if (columns <= 0) {
+            Log.warnf("Skipped warming up model '%s' because its feature count is unknown", loadedModel.id());
+            return;
+        }
+
+        int rows = citronConfig.classifier().batching().maxBatchSize();
+        var random = new Random(WARM_UP_SEED);
+        var features = allocate(rows, columns);
+        while (features.hasRemaining()) {
+            // Mostly small counts and flags, with an occasional large rank
+            features.put(random.nextInt(4) == 0 ? random.nextInt(1_000_000) : random.nextInt(64));
+        }
+        features.flip();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            loadedModel.predict(features, 1, columns);
+            loadedModel.predict(features, rows, columns);
+        }
+
+        Log.infof("Warmed up model '%s' in %d ms", loadedModel.id(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Fixture rows are compared as one batch and one row at a time,
+    // since onnxruntime parallelizes differently depending on the batch size
+    private static int countMismatches(LoadedModel loadedModel, TreeEnsembleEvaluator evaluator,
+                                       float[][] fixtures, int columns) throws OrtException {
+        int mismatches = 0;
+
+        var batch = allocate(fixtures.length, columns);
+        for (float[] row : fixtures) {
+            batch.put(row);
+        }
+        batch.flip();
+        mismatches += countMismatches(
+                loadedModel.runSession(batch, fixtures.length, columns),
+                LoadedModel.evaluate(evaluator, batch, fixtures.length, columns));
+
+        var single = allocate(1, columns);
+        for (float[] row : fixtures) {
+            single.clear();
+            single.put(row);
+            single.flip();
+            mismatches += countMismatches(
+                    loadedModel.runSession(single, 1, columns),
+                    LoadedModel.evaluate(evaluator, single, 1, columns));
+        }
+
+        return mismatches;
+    }
+
+    private static int countMismatches(Predictions expected, Predictions actual) {
+        int mismatches = 0;
+
+        for (int i = 0; i < expected.labels().length; i++) {
+            if (expected.labels()[i] != actual.labels()[i]
+                    || Float.floatToIntBits(expected.probabilities()[i])
+                    != Float.floatToIntBits(actual.probabilities()[i])) {
+                mismatches++;
+            }
         }
 
+        return mismatches;
     }
 
-    public byte[] getModel(Model model) {
-        return models.get(model.getId());
+    private static FloatBuffer allocate(int rows, int columns) {
+        return ByteBuffer.allocateDirect(rows * columns * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
     }
 
 }
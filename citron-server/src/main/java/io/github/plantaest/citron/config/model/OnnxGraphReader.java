@@ -0,0 +1,232 @@
+package io.github.plantaest.citron.config.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal protobuf wire-format reader for the parts of an ONNX ModelProto needed to
+// rebuild tree ensembles on the JVM: ModelProto.graph -> GraphProto.node -> NodeProto.attribute.
+// Ref: https://github.com/onnx/onnx/blob/main/onnx/onnx.proto
+final class OnnxGraphReader {
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    private OnnxGraphReader() {}
+
+    record Node(
+            String opType,
+            String domain,
+            List<String> inputs,
+            List<String> outputs,
+            Map<String, Attribute> attributes
+    ) {}
+
+    record Attribute(
+            String name,
+            float f,
+            long i,
+            String s,
+            float[] floats,
+            long[] ints,
+            List<String> strings
+    ) {}
+
+    // ModelProto.model_version = 5, or 0 when the exporter did not set it
+    static long readModelVersion(ByteBuffer model) {
+        var buffer = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            long key = readVarint(buffer);
+            int wireType = (int) (key & 7);
+
+            if ((key >>> 3) == 5 && wireType == WIRE_VARINT) {
+                return readVarint(buffer);
+            }
+            skip(buffer, wireType);
+        }
+
+        return 0;
+    }
+
+    static List<Node> readNodes(ByteBuffer model) {
+        var buffer = model.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        List<Node> nodes = new ArrayList<>();
+
+        while (buffer.hasRemaining()) {
+            long key = readVarint(buffer);
+            int field = (int) (key >>> 3);
+            int wireType = (int) (key & 7);
+
+            // ModelProto.graph = 7
+            if (field == 7 && wireType == WIRE_LENGTH_DELIMITED) {
+                var graph = slice(buffer);
+                while (graph.hasRemaining()) {
+                    long graphKey = readVarint(graph);
+                    // GraphProto.node = 1
+                    if ((graphKey >>> 3) == 1 && (graphKey & 7) == WIRE_LENGTH_DELIMITED) {
+                        nodes.add(readNode(slice(graph)));
+                    } else {
+                        skip(graph, (int) (graphKey & 7));
+                    }
+                }
+            } else {
+                skip(buffer, wireType);
+            }
+        }
+
+        return nodes;
+    }
+
+    private static Node readNode(ByteBuffer buffer) {
+        String opType = "";
+        String domain = "";
+        List<String> inputs = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        Map<String, Attribute> attributes = new HashMap<>();
+
+        while (buffer.hasRemaining()) {
+            long key = readVarint(buffer);
+            int wireType = (int) (key & 7);
+
+            switch ((int) (key >>> 3)) {
+                case 1 -> inputs.add(readString(buffer));
+                case 2 -> outputs.add(readString(buffer));
+                case 4 -> opType = readString(buffer);
+                case 5 -> {
+                    var attribute = readAttribute(slice(buffer));
+                    attributes.put(attribute.name(), attribute);
+                }
+                case 7 -> domain = readString(buffer);
+                default -> skip(buffer, wireType);
+            }
+        }
+
+        return new Node(opType, domain, inputs, outputs, attributes);
+    }
+
+    private static Attribute readAttribute(ByteBuffer buffer) {
+        String name = "";
+        float f = 0;
+        long i = 0;
+        String s = null;
+        FloatList floats = new FloatList();
+        LongList ints = new LongList();
+        List<String> strings = new ArrayList<>();
+
+        while (buffer.hasRemaining()) {
+            long key = readVarint(buffer);
+            int wireType = (int) (key & 7);
+
+            switch ((int) (key >>> 3)) {
+                case 1 -> name = readString(buffer);
+                case 2 -> f = buffer.getFloat();
+                case 3 -> i = readVarint(buffer);
+                case 4 -> s = readString(buffer);
+                case 7 -> {
+                    // Repeated floats may be packed or written one by one
+                    if (wireType == WIRE_LENGTH_DELIMITED) {
+                        var packed = slice(buffer);
+                        while (packed.hasRemaining()) {
+                            floats.add(packed.getFloat());
+                        }
+                    } else {
+                        floats.add(buffer.getFloat());
+                    }
+                }
+                case 8 -> {
+                    if (wireType == WIRE_LENGTH_DELIMITED) {
+                        var packed = slice(buffer);
+                        while (packed.hasRemaining()) {
+                            ints.add(readVarint(packed));
+                        }
+                    } else {
+                        ints.add(readVarint(buffer));
+                    }
+                }
+                case 9 -> strings.add(readString(buffer));
+                default -> skip(buffer, wireType);
+            }
+        }
+
+        return new Attribute(name, f, i, s, floats.toArray(), ints.toArray(), strings);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long result = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint in ONNX model");
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer) {
+        int length = (int) readVarint(buffer);
+        var slice = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var slice = slice(buffer);
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skip(ByteBuffer buffer, int wireType) {
+        switch (wireType) {
+            case WIRE_VARINT -> readVarint(buffer);
+            case WIRE_FIXED64 -> buffer.position(buffer.position() + 8);
+            case WIRE_LENGTH_DELIMITED -> slice(buffer);
+            case WIRE_FIXED32 -> buffer.position(buffer.position() + 4);
+            default -> throw new IllegalArgumentException("Unsupported wire type in ONNX model: " + wireType);
+        }
+    }
+
+    private static final class FloatList {
+        private float[] values = new float[16];
+        private int size;
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        float[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
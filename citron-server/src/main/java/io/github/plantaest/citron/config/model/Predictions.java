@@ -0,0 +1,6 @@
+package io.github.plantaest.citron.config.model;
+
+public record Predictions(
+        long[] labels,
+        float[] probabilities
+) {}
@@ -0,0 +1,359 @@
+package io.github.plantaest.citron.config.model;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Flat, array-based evaluator for binary ai.onnx.ml TreeEnsembleClassifier graphs, such as
+// gradient boosting models exported by skl2onnx. It reproduces the onnxruntime kernel
+// (float thresholds, sequential float accumulation over trees, base value, binary post transform)
+// so that, with a sequential onnxruntime session, both backends return identical bits.
+public final class TreeEnsembleEvaluator {
+
+    private static final byte MODE_LEAF = 0;
+    private static final byte MODE_BRANCH_LEQ = 1;
+    private static final byte MODE_BRANCH_LT = 2;
+    private static final byte MODE_BRANCH_GTE = 3;
+    private static final byte MODE_BRANCH_GT = 4;
+    private static final byte MODE_BRANCH_EQ = 5;
+    private static final byte MODE_BRANCH_NEQ = 6;
+
+    private final int[] roots;
+    private final byte[] modes;
+    private final int[] featureIds;
+    private final float[] thresholds;
+    private final boolean[] missingTracksTrue;
+    private final int[] trueChildren;
+    private final int[] falseChildren;
+    private final int[] leafWeightStarts;
+    private final float[] leafWeights;
+    private final float baseValue;
+    private final long[] classLabels;
+    private final boolean logistic;
+    private final boolean weightsAllPositive;
+    private final int featureCount;
+
+    private TreeEnsembleEvaluator(int[] roots, byte[] modes, int[] featureIds, float[] thresholds,
+                                  boolean[] missingTracksTrue, int[] trueChildren, int[] falseChildren,
+                                  int[] leafWeightStarts, float[] leafWeights, float baseValue,
+                                  long[] classLabels, boolean logistic, boolean weightsAllPositive) {
+        this.roots = roots;
+        this.modes = modes;
+        this.featureIds = featureIds;
+        this.thresholds = thresholds;
+        this.missingTracksTrue = missingTracksTrue;
+        this.trueChildren = trueChildren;
+        this.falseChildren = falseChildren;
+        this.leafWeightStarts = leafWeightStarts;
+        this.leafWeights = leafWeights;
+        this.baseValue = baseValue;
+        this.classLabels = classLabels;
+        this.logistic = logistic;
+        this.weightsAllPositive = weightsAllPositive;
+        this.featureCount = Arrays.stream(featureIds).max().orElse(0) + 1;
+    }
+
+    // Throws UnsupportedOperationException when the graph is not a binary tree ensemble
+    // that this evaluator can reproduce exactly
+    public static TreeEnsembleEvaluator compile(ByteBuffer model) {
+        List<OnnxGraphReader.Node> nodes = OnnxGraphReader.readNodes(model);
+        OnnxGraphReader.Node ensemble = null;
+
+        for (var node : nodes) {
+            switch (node.opType()) {
+                case "TreeEnsembleClassifier" -> {
+                    if (ensemble != null) {
+                        throw new UnsupportedOperationException("More than one TreeEnsembleClassifier node");
+                    }
+                    ensemble = node;
+                }
+                // Label cast and ZipMap only reshape the output
+                case "Cast", "ZipMap" -> {}
+                default -> throw new UnsupportedOperationException("Unsupported operator: " + node.opType());
+            }
+        }
+
+        if (ensemble == null) {
+            throw new UnsupportedOperationException("No TreeEnsembleClassifier node");
+        }
+
+        return compile(ensemble.attributes());
+    }
+
+    private static TreeEnsembleEvaluator compile(Map<String, OnnxGraphReader.Attribute> attributes) {
+        for (var tensorAttribute : List.of("nodes_values_as_tensor", "base_values_as_tensor",
+                "class_weights_as_tensor", "classlabels_strings")) {
+            if (attributes.containsKey(tensorAttribute)) {
+                throw new UnsupportedOperationException("Unsupported attribute: " + tensorAttribute);
+            }
+        }
+
+        long[] classLabels = ints(attributes, "classlabels_int64s");
+        String postTransform = attributes.containsKey("post_transform")
+                ? attributes.get("post_transform").s()
+                : "NONE";
+        float[] baseValues = attributes.containsKey("base_values")
+                ? attributes.get("base_values").floats()
+                : new float[0];
+        long[] classIds = ints(attributes, "class_ids");
+        long[] classNodeIds = ints(attributes, "class_nodeids");
+        long[] classTreeIds = ints(attributes, "class_treeids");
+        float[] classWeights = floats(attributes, "class_weights");
+        long[] nodeIds = ints(attributes, "nodes_nodeids");
+        long[] treeIds = ints(attributes, "nodes_treeids");
+        long[] featureIds = ints(attributes, "nodes_featureids");
+        float[] values = floats(attributes, "nodes_values");
+        long[] trueNodeIds = ints(attributes, "nodes_truenodeids");
+        long[] falseNodeIds = ints(attributes, "nodes_falsenodeids");
+        List<String> modeNames = attributes.containsKey("nodes_modes")
+                ? attributes.get("nodes_modes").strings()
+                : List.of();
+        long[] missingTracks = attributes.containsKey("nodes_missing_value_tracks_true")
+                ? attributes.get("nodes_missing_value_tracks_true").ints()
+                : new long[0];
+
+        if (classLabels.length != 2) {
+            throw new UnsupportedOperationException("Only binary classifiers are supported");
+        }
+        if (!postTransform.equals("NONE") && !postTransform.equals("LOGISTIC")) {
+            throw new UnsupportedOperationException("Unsupported post_transform: " + postTransform);
+        }
+        if (baseValues.length > 1) {
+            throw new UnsupportedOperationException("Only a single base value is supported");
+        }
+        if (Arrays.stream(classIds).distinct().count() != 1) {
+            // onnxruntime only uses the single-score binary path when one class carries all weights
+            throw new UnsupportedOperationException("Only single-score binary ensembles are supported");
+        }
+
+        int nodeCount = nodeIds.length;
+        if (treeIds.length != nodeCount || featureIds.length != nodeCount || values.length != nodeCount
+                || trueNodeIds.length != nodeCount || falseNodeIds.length != nodeCount
+                || modeNames.size() != nodeCount) {
+            throw new UnsupportedOperationException("Inconsistent node attribute lengths");
+        }
+        if (classNodeIds.length != classWeights.length || classTreeIds.length != classWeights.length) {
+            throw new UnsupportedOperationException("Inconsistent class weight attribute lengths");
+        }
+
+        Map<Long, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            indexes.put(nodeKey(treeIds[i], nodeIds[i]), i);
+        }
+
+        // Trees are visited in the order their first node appears, like onnxruntime does
+        Set<Long> seenTrees = new HashSet<>();
+        int[] roots = new int[nodeCount];
+        int rootCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (seenTrees.add(treeIds[i])) {
+                roots[rootCount++] = i;
+            }
+        }
+
+        byte[] modes = new byte[nodeCount];
+        int[] features = new int[nodeCount];
+        boolean[] missingTracksTrue = new boolean[nodeCount];
+        int[] trueChildren = new int[nodeCount];
+        int[] falseChildren = new int[nodeCount];
+
+        for (int i = 0; i < nodeCount; i++) {
+            modes[i] = mode(modeNames.get(i));
+            features[i] = (int) featureIds[i];
+            missingTracksTrue[i] = i < missingTracks.length && missingTracks[i] != 0;
+
+            if (modes[i] != MODE_LEAF) {
+                trueChildren[i] = child(indexes, treeIds[i], trueNodeIds[i]);
+                falseChildren[i] = child(indexes, treeIds[i], falseNodeIds[i]);
+            }
+        }
+
+        // Leaf weights are grouped per node, keeping their attribute order
+        int[] weightCounts = new int[nodeCount];
+        int[] weightNodes = new int[classWeights.length];
+        for (int i = 0; i < classWeights.length; i++) {
+            weightNodes[i] = child(indexes, classTreeIds[i], classNodeIds[i]);
+            weightCounts[weightNodes[i]]++;
+        }
+
+        int[] leafWeightStarts = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            leafWeightStarts[i + 1] = leafWeightStarts[i] + weightCounts[i];
+        }
+
+        float[] leafWeights = new float[classWeights.length];
+        int[] cursors = Arrays.copyOf(leafWeightStarts, nodeCount);
+        boolean weightsAllPositive = true;
+        for (int i = 0; i < classWeights.length; i++) {
+            leafWeights[cursors[weightNodes[i]]++] = classWeights[i];
+            if (classWeights[i] < 0) {
+                weightsAllPositive = false;
+            }
+        }
+
+        return new TreeEnsembleEvaluator(
+                Arrays.copyOf(roots, rootCount), modes, features, values, missingTracksTrue,
+                trueChildren, falseChildren, leafWeightStarts, leafWeights,
+                baseValues.length == 1 ? baseValues[0] : 0f,
+                classLabels, postTransform.equals("LOGISTIC"), weightsAllPositive);
+    }
+
+    // Raw ensemble score of one row, including the base value
+    public float score(FloatBuffer features, int offset) {
+        float score = 0f;
+
+        for (int root : roots) {
+            int node = root;
+
+            while (modes[node] != MODE_LEAF) {
+                float value = features.get(offset + featureIds[node]);
+                node = branch(node, value) ? trueChildren[node] : falseChildren[node];
+            }
+
+            for (int i = leafWeightStarts[node]; i < leafWeightStarts[node + 1]; i++) {
+                score += leafWeights[i];
+            }
+        }
+
+        return score + baseValue;
+    }
+
+    public long label(float score) {
+        boolean positive = weightsAllPositive ? score > 0.5f : score > 0f;
+        return positive ? classLabels[1] : classLabels[0];
+    }
+
+    // Probability of the second class, matching onnxruntime's binary post transform
+    public float probability(float score) {
+        if (!weightsAllPositive && logistic) {
+            return computeLogistic(score);
+        }
+        return score;
+    }
+
+    public int featureCount() {
+        return featureCount;
+    }
+
+    // Rows used to check this evaluator against onnxruntime: every split threshold and its
+    // neighbouring floats on top of seeded random rows, plus fully random rows
+    public float[][] parityFixtures(int featureCount, long seed) {
+        var random = new Random(seed);
+        List<float[]> rows = new ArrayList<>();
+
+        for (int node = 0; node < modes.length; node++) {
+            if (modes[node] == MODE_LEAF) {
+                continue;
+            }
+            for (float value : new float[]{
+                    thresholds[node], Math.nextDown(thresholds[node]), Math.nextUp(thresholds[node])}) {
+                float[] row = randomRow(random, featureCount);
+                row[featureIds[node]] = value;
+                rows.add(row);
+            }
+        }
+
+        for (int i = 0; i < 256; i++) {
+            rows.add(randomRow(random, featureCount));
+        }
+
+        return rows.toArray(float[][]::new);
+    }
+
+    private float[] randomRow(Random random, int featureCount) {
+        float[] row = new float[featureCount];
+
+        for (int feature = 0; feature < featureCount; feature++) {
+            row[feature] = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(2);
+                case 1 -> -1;
+                case 2 -> random.nextInt(1_000_000);
+                default -> thresholdNear(random, feature);
+            };
+        }
+
+        return row;
+    }
+
+    private float thresholdNear(Random random, int feature) {
+        for (int attempt = 0; attempt < 32; attempt++) {
+            int node = random.nextInt(modes.length);
+            if (modes[node] != MODE_LEAF && featureIds[node] == feature) {
+                return thresholds[node] + (random.nextFloat() - 0.5f);
+            }
+        }
+        return random.nextFloat() * 100;
+    }
+
+    private boolean branch(int node, float value) {
+        if (Float.isNaN(value) && missingTracksTrue[node]) {
+            return true;
+        }
+
+        float threshold = thresholds[node];
+        return switch (modes[node]) {
+            case MODE_BRANCH_LEQ -> value <= threshold;
+            case MODE_BRANCH_LT -> value < threshold;
+            case MODE_BRANCH_GTE -> value >= threshold;
+            case MODE_BRANCH_GT -> value > threshold;
+            case MODE_BRANCH_EQ -> value == threshold;
+            case MODE_BRANCH_NEQ -> value != threshold;
+            default -> throw new IllegalStateException("Unexpected node mode: " + modes[node]);
+        };
+    }
+
+    // Same float arithmetic as onnxruntime's ComputeLogistic
+    private static float computeLogistic(float value) {
+        float v = 1f / (1f + (float) Math.exp(-Math.abs(value)));
+        return value < 0 ? 1f - v : v;
+    }
+
+    private static byte mode(String name) {
+        return switch (name) {
+            case "LEAF" -> MODE_LEAF;
+            case "BRANCH_LEQ" -> MODE_BRANCH_LEQ;
+            case "BRANCH_LT" -> MODE_BRANCH_LT;
+            case "BRANCH_GTE" -> MODE_BRANCH_GTE;
+            case "BRANCH_GT" -> MODE_BRANCH_GT;
+            case "BRANCH_EQ" -> MODE_BRANCH_EQ;
+            case "BRANCH_NEQ" -> MODE_BRANCH_NEQ;
+            default -> throw new UnsupportedOperationException("Unsupported node mode: " + name);
+        };
+    }
+
+    private static int child(Map<Long, Integer> indexes, long treeId, long nodeId) {
+        Integer index = indexes.get(nodeKey(treeId, nodeId));
+        if (index == null) {
+            throw new UnsupportedOperationException("Unknown node %d in tree %d".formatted(nodeId, treeId));
+        }
+        return index;
+    }
+
+    private static long nodeKey(long treeId, long nodeId) {
+        return (treeId << 32) | (nodeId & 0xFFFFFFFFL);
+    }
+
+    private static long[] ints(Map<String, OnnxGraphReader.Attribute> attributes, String name) {
+        var attribute = attributes.get(name);
+        if (attribute == null) {
+            throw new UnsupportedOperationException("Missing attribute: " + name);
+        }
+        return attribute.ints();
+    }
+
+    private static float[] floats(Map<String, OnnxGraphReader.Attribute> attributes, String name) {
+        var attribute = attributes.get(name);
+        if (attribute == null) {
+            throw new UnsupportedOperationException("Missing attribute: " + name);
+        }
+        return attribute.floats();
+    }
+
+}
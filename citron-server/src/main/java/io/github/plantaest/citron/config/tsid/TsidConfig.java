@@ -1,6 +1,7 @@
 package io.github.plantaest.citron.config.tsid;
 
 import com.github.f4b6a3.tsid.TsidFactory;
+import io.github.plantaest.citron.config.cluster.ClusterCoordinator;
 import jakarta.inject.Singleton;
 
 import java.time.Instant;
@@ -8,11 +9,12 @@ import java.time.Instant;
 public class TsidConfig {
 
     @Singleton
-    public TsidFactory tsidFactory() {
+    public TsidFactory tsidFactory(ClusterCoordinator clusterCoordinator) {
         // Ref: Discord Snowflakes: https://github.com/f4b6a3/tsid-creator
         int worker = 1;
         int process = 1;
-        int node = (worker << 5 | process);
+        // Each replica leases its own node when clustering is enabled
+        int node = clusterCoordinator.getNode().orElse(worker << 5 | process);
 
         Instant customEpoch = Instant.parse("2015-01-01T00:00:00.000Z");
 
@@ -0,0 +1,30 @@
+package io.github.plantaest.citron.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public record AllUsersResponse(
+        @JsonProperty("continue")
+        Continue _continue,
+        Query query
+) {
+
+    public record Continue(
+            String aufrom
+    ) {}
+
+    public record Query(
+            @JsonProperty("allusers")
+            List<User> allUsers
+    ) {
+
+        public record User(
+                @JsonProperty("userid")
+                long userId,
+                String name
+        ) {}
+
+    }
+
+}
@@ -1,60 +1,42 @@
 package io.github.plantaest.citron.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.annotation.Nullable;
 
-import java.net.URI;
-
+// Only the fields StreamRunner reads; the rest of the recentchange event is skipped when binding
 public record Change(
-        String $schema,
         Meta meta,
         long id,
         String type,
         int namespace,
         String title,
-        @JsonProperty("title_url")
-        URI titleUrl,
-        String comment,
         long timestamp,
         String user,
         boolean bot,
-        @JsonProperty("notify_url")
-        URI notifyUrl,
-        boolean minor,
         boolean patrolled,
-        Length length,
         Revision revision,
-        @JsonProperty("server_url")
-        String serverUrl,
         @JsonProperty("server_name")
         String serverName,
-        @JsonProperty("server_script_path")
-        String serverScriptPath,
         String wiki,
-        @JsonProperty("parsedcomment")
-        String parsedComment
+        // Set on log events only; log_params differs in shape between log types
+        @Nullable
+        @JsonProperty("log_type")
+        String logType,
+        @Nullable
+        @JsonProperty("log_params")
+        JsonNode logParams
 ) {
 
     public record Meta(
-            URI uri,
-            @JsonProperty("request_id")
-            String requestId,
             String id,
             String dt,
             String domain,
             String stream,
-            String topic,
             int partition,
             long offset
     ) {}
 
-    public record Length(
-            @Nullable
-            Integer old,
-            @JsonProperty("new")
-            int _new
-    ) {}
-
     public record Revision(
             @Nullable
             Long old,
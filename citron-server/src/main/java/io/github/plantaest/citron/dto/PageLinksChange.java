@@ -0,0 +1,50 @@
+package io.github.plantaest.citron.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+// Ref: https://schema.wikimedia.org/repositories/primary/jsonschema/mediawiki/page/links-change/latest
+public record PageLinksChange(
+        String $schema,
+        Change.Meta meta,
+        String database,
+        @JsonProperty("page_id")
+        long pageId,
+        @JsonProperty("page_title")
+        String pageTitle,
+        @JsonProperty("page_namespace")
+        int pageNamespace,
+        @Nullable
+        @JsonProperty("rev_id")
+        Long revId,
+        @Nullable
+        Performer performer,
+        @Nullable
+        @JsonProperty("added_links")
+        List<Link> addedLinks,
+        @Nullable
+        @JsonProperty("removed_links")
+        List<Link> removedLinks
+) {
+
+    public record Performer(
+            @JsonProperty("user_text")
+            String userText,
+            @Nullable
+            @JsonProperty("user_id")
+            Long userId,
+            @Nullable
+            @JsonProperty("user_groups")
+            List<String> userGroups,
+            @JsonProperty("user_is_bot")
+            boolean userIsBot
+    ) {}
+
+    public record Link(
+            String link,
+            boolean external
+    ) {}
+
+}
@@ -0,0 +1,19 @@
+package io.github.plantaest.citron.entity;
+
+import io.github.plantaest.citron.config.recordbuilder.Builder;
+
+import java.time.Instant;
+
+@Builder
+public record ShadowScore(
+        long reportedHostnameId,
+        Instant createdAt,
+        String wikiId,
+        String hostname,
+        double activeScore,
+        int activeModelNumber,
+        long activeLatencyMicros,
+        double shadowScore,
+        int shadowModelNumber,
+        long shadowLatencyMicros
+) {}
@@ -0,0 +1,24 @@
+package io.github.plantaest.citron.enumeration;
+
+public enum IngestionMode {
+    // Consume recentchange and diff every eligible edit to find added links
+    RECENT_CHANGES("recentchange"),
+    // Consume mediawiki.page-links-change, which already lists the external links added by each revision.
+    // Saves the diff and source requests, at a cost:
+    // - the event has no patrolled flag nor edit/new type, so patrolled edits are checked as well
+    // - links added by a links update (refreshLinks jobs, template edits) are attributed to whoever
+    //   last edited the page
+    // - rights log events are not seen, so cached user groups only change when they expire
+    // - diff decoding and page source streaming are not used
+    PAGE_LINKS_CHANGE("mediawiki.page-links-change");
+
+    private final String stream;
+
+    IngestionMode(String stream) {
+        this.stream = stream;
+    }
+
+    public String getStream() {
+        return stream;
+    }
+}
@@ -0,0 +1,8 @@
+package io.github.plantaest.citron.enumeration;
+
+public enum ModelBackend {
+    // Run the model in an onnxruntime session
+    ONNXRUNTIME,
+    // Compile supported tree ensembles into a pure-Java evaluator, falling back to onnxruntime
+    TREE_ENSEMBLE
+}
@@ -0,0 +1,10 @@
+package io.github.plantaest.citron.enumeration;
+
+public enum ModelSource {
+    // Read the model from the application classpath into the heap
+    CLASSPATH,
+    // Let onnxruntime read the model file directly from the file system
+    FILE,
+    // Memory-map the model file and hand the mapping to onnxruntime without copying it into the heap
+    MMAP
+}
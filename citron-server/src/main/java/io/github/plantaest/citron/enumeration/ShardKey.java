@@ -0,0 +1,8 @@
+package io.github.plantaest.citron.enumeration;
+
+public enum ShardKey {
+    // All changes of a wiki go to the same replica
+    WIKI,
+    // Changes are spread by revision ID, which balances a single busy wiki across replicas
+    REVISION
+}
@@ -0,0 +1,8 @@
+package io.github.plantaest.citron.enumeration;
+
+public enum ThreadMode {
+    // Fixed pools of platform threads sized by the configured concurrency
+    PLATFORM,
+    // One virtual thread per task, with the configured concurrency enforced by semaphores
+    VIRTUAL
+}
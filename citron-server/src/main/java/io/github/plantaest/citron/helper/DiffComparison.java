@@ -1,10 +0,0 @@
-package io.github.plantaest.citron.helper;
-
-import jakarta.annotation.Nullable;
-
-public record DiffComparison(
-        @Nullable
-        String oldText,
-        @Nullable
-        String newText
-) {}
@@ -0,0 +1,112 @@
+package io.github.plantaest.citron.helper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff.HighlightRange;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Reads the added hostnames straight from a raw revision comparison response, giving the same result
+// as binding it to CompareRevisionsResponse and scanning each diff line. The token stream is
+// walked one diff line at a time: "from", "to" and lines that cannot add anything (context, removed
+// lines, moved-from paragraphs) are skipped without decoding their text, and each remaining line is
+// reduced to its hostnames before the next one is read.
+@Singleton
+public class DiffHostnameDecoder {
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    public List<String> extractHostnames(byte[] comparison) {
+        Set<String> extractedHostnames = new TreeSet<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(comparison)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a revision comparison object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                if ("diff".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readDiff(parser, extractedHostnames);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to decode revision comparison", e);
+        }
+
+        return extractedHostnames.stream().toList();
+    }
+
+    // Leaves the parser at the end of the diff line object
+    private static void readDiff(JsonParser parser, Set<String> extractedHostnames) throws IOException {
+        int type = -1;
+        String text = null;
+        List<HighlightRange> highlightRanges = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "type" -> type = parser.getIntValue();
+                // Lines of other types are known not to add anything once the type has been read
+                case "text" -> text = type == -1 || isAddingType(type) ? parser.getValueAsString() : null;
+                case "highlightRanges" -> highlightRanges = token == JsonToken.START_ARRAY
+                        ? readHighlightRanges(parser)
+                        : null;
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (isAddingType(type)) {
+            DiffLineScanner.addAddedHostnames(type, text, highlightRanges, extractedHostnames);
+        }
+    }
+
+    private static List<HighlightRange> readHighlightRanges(JsonParser parser) throws IOException {
+        List<HighlightRange> highlightRanges = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int start = 0;
+            int length = 0;
+            int type = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "start" -> start = parser.getIntValue();
+                    case "length" -> length = parser.getIntValue();
+                    case "type" -> type = parser.getIntValue();
+                    default -> parser.skipChildren();
+                }
+            }
+
+            highlightRanges.add(new HighlightRange(start, length, type));
+        }
+
+        return highlightRanges;
+    }
+
+    // 1: added line, 3: changed line, 5: paragraph moved here
+    private static boolean isAddingType(int type) {
+        return type == 1 || type == 3 || type == 5;
+    }
+
+}
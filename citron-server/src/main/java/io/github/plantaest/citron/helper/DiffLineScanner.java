@@ -0,0 +1,182 @@
+package io.github.plantaest.citron.helper;
+
+import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff.HighlightRange;
+import jakarta.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+// Finds the hostnames a diff line adds: those of the line without its deleted ranges that are not in
+// the line without its added ones, as DiffLineScannerTest checks against String copies of the line
+// with the ranges cut out. Highlight ranges are byte offsets into the UTF-8 encoded
+// line, so the line is encoded once into a per-thread buffer, the bytes outside the ranges are
+// copied span by span into a second one, and those are decoded into a per-thread char buffer that
+// WikitextLinkTokenizer reads in place. Neither side of the comparison becomes a String.
+public final class DiffLineScanner {
+
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private DiffLineScanner() {}
+
+    public static void addAddedHostnames(int type, String text, @Nullable List<HighlightRange> highlightRanges,
+                                         Set<String> extractedHostnames) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+
+        if (type == 1) {
+            extractedHostnames.addAll(WikitextLinkTokenizer.extractHostnames(text));
+            return;
+        }
+
+        if ((type != 3 && type != 5) || highlightRanges == null || highlightRanges.isEmpty()) {
+            return;
+        }
+
+        boolean hasTypeZero = false;
+        boolean allTypeZero = true;
+
+        for (var range : highlightRanges) {
+            if (range.type() == 0) {
+                hasTypeZero = true;
+            } else {
+                allTypeZero = false;
+            }
+        }
+
+        if (!hasTypeZero) {
+            return;
+        }
+
+        // New text drops the deleted ranges (type 1), old text drops the added ones (type 0)
+        var lineBuffers = buffers.get();
+        lineBuffers.encode(text);
+
+        Set<String> hostnamesFromNewText = allTypeZero
+                ? WikitextLinkTokenizer.extractHostnames(text)
+                : lineBuffers.scanWithout(highlightRanges, 1);
+
+        if (hostnamesFromNewText.isEmpty()) {
+            return;
+        }
+
+        Set<String> hostnamesFromOldText = lineBuffers.scanWithout(highlightRanges, 0);
+
+        for (String hostname : hostnamesFromNewText) {
+            if (!hostnamesFromOldText.contains(hostname)) {
+                extractedHostnames.add(hostname);
+            }
+        }
+    }
+
+    private static final class Buffers {
+
+        // Same substitutions as String.getBytes and new String for unpaired surrogates and broken sequences
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private ByteBuffer encoded = ByteBuffer.allocate(1024);
+        private byte[] kept = new byte[1024];
+        private CharBuffer decoded = CharBuffer.allocate(1024);
+        private int[] spanStarts = new int[16];
+        private int[] spanEnds = new int[16];
+
+        void encode(String text) {
+            // A char never takes more than 3 bytes in UTF-8
+            if (encoded.capacity() < text.length() * 3) {
+                encoded = ByteBuffer.allocate(text.length() * 3);
+            }
+
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(text), encoded, true);
+            encoder.flush(encoded);
+            encoded.flip();
+        }
+
+        // Scans the encoded line without the bytes covered by ranges of the given type. Zero bytes are
+        // dropped from what is kept, as the String-based extraction used them to mark the cut bytes.
+        Set<String> scanWithout(List<HighlightRange> highlightRanges, int rangeType) {
+            byte[] bytes = encoded.array();
+            int length = encoded.limit();
+            int spanCount = collectSpans(highlightRanges, rangeType, length);
+
+            if (kept.length < length) {
+                kept = new byte[length];
+            }
+
+            int keptLength = 0;
+            int position = 0;
+
+            for (int i = 0; i <= spanCount; i++) {
+                int keepEnd = i < spanCount ? spanStarts[i] : length;
+
+                for (int j = position; j < keepEnd; j++) {
+                    if (bytes[j] != 0) {
+                        kept[keptLength++] = bytes[j];
+                    }
+                }
+
+                if (i < spanCount) {
+                    position = Math.max(position, spanEnds[i]);
+                }
+            }
+
+            // UTF-8 never decodes to more chars than it has bytes
+            if (decoded.capacity() < keptLength) {
+                decoded = CharBuffer.allocate(keptLength);
+            }
+
+            decoded.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(kept, 0, keptLength), decoded, true);
+            decoder.flush(decoded);
+            decoded.flip();
+
+            return WikitextLinkTokenizer.extractHostnames(decoded);
+        }
+
+        // Collects the ranges of the given type as [start, end) spans clamped to the line, sorted by start
+        private int collectSpans(List<HighlightRange> highlightRanges, int rangeType, int length) {
+            if (spanStarts.length < highlightRanges.size()) {
+                spanStarts = new int[highlightRanges.size()];
+                spanEnds = new int[highlightRanges.size()];
+            }
+
+            int spanCount = 0;
+
+            for (var range : highlightRanges) {
+                int start = Math.clamp(range.start(), 0, length);
+                int end = Math.clamp((long) range.start() + range.length(), start, length);
+
+                if (range.type() != rangeType || start == end) {
+                    continue;
+                }
+
+                // Ranges come sorted from MediaWiki, so this insertion rarely moves anything
+                int i = spanCount++;
+                while (i > 0 && spanStarts[i - 1] > start) {
+                    spanStarts[i] = spanStarts[i - 1];
+                    spanEnds[i] = spanEnds[i - 1];
+                    i--;
+                }
+                spanStarts[i] = start;
+                spanEnds[i] = end;
+            }
+
+            return spanCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package io.github.plantaest.citron.helper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.plantaest.citron.config.CitronConfig;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.util.Set;
+
+// Streams over the top-level fields of a raw event and rejects it as soon as one of the fields
+// that StreamRunner filters on rules it out, so most events are never bound to a record.
+// Events that pass are still checked in full after binding.
+@Singleton
+public class EventPreFilter {
+
+    @Inject
+    ObjectMapper objectMapper;
+    @Inject
+    CitronConfig citronConfig;
+
+    public boolean acceptRecentChange(String json) {
+        Set<String> allowedWikiIds = citronConfig.spamModule().wikis().keySet();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+
+            // Rights log events are kept whoever made them, so bot and patrolled flags
+            // can only reject the event once its type is known
+            String type = null;
+            boolean botOrPatrolled = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                boolean rejected = switch (field) {
+                    case "wiki" -> !allowedWikiIds.contains(parser.getValueAsString());
+                    case "type" -> {
+                        type = parser.getValueAsString();
+                        yield !"edit".equals(type) && !"new".equals(type) && !"log".equals(type)
+                                || botOrPatrolled && !"log".equals(type);
+                    }
+                    case "log_type" -> token == JsonToken.VALUE_STRING && !"rights".equals(parser.getValueAsString());
+                    case "bot", "patrolled" -> {
+                        botOrPatrolled |= token == JsonToken.VALUE_TRUE;
+                        yield botOrPatrolled && type != null && !"log".equals(type);
+                    }
+                    case "meta" -> isCanary(parser, token);
+                    default -> {
+                        parser.skipChildren();
+                        yield false;
+                    }
+                };
+
+                if (rejected) {
+                    return false;
+                }
+            }
+
+            return !botOrPatrolled || "log".equals(type);
+        } catch (IOException e) {
+            // Left to the full parse, which reports the malformed event
+            return true;
+        }
+    }
+
+    public boolean acceptPageLinksChange(String json) {
+        Set<String> allowedWikiIds = citronConfig.spamModule().wikis().keySet();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                boolean rejected = switch (field) {
+                    case "database" -> !allowedWikiIds.contains(parser.getValueAsString());
+                    case "meta" -> isCanary(parser, token);
+                    case "performer" -> isBot(parser, token);
+                    default -> {
+                        parser.skipChildren();
+                        yield false;
+                    }
+                };
+
+                if (rejected) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static boolean isCanary(JsonParser parser, JsonToken token) throws IOException {
+        return token == JsonToken.START_OBJECT && "canary".equals(readNestedString(parser, "domain"));
+    }
+
+    private static boolean isBot(JsonParser parser, JsonToken token) throws IOException {
+        return token == JsonToken.START_OBJECT && "true".equals(readNestedString(parser, "user_is_bot"));
+    }
+
+    // Reads one scalar field of the current object and leaves the parser at the end of that object
+    private static String readNestedString(JsonParser parser, String name) throws IOException {
+        String value = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+
+            if (field.equals(name) && parser.currentToken().isScalarValue()) {
+                value = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return value;
+    }
+
+}
@@ -0,0 +1,420 @@
+package io.github.plantaest.citron.helper;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+// Finds the hostnames of external links in one pass over the text. The result is the same as
+// matching \bhttps?://[-a-zA-Z0-9+&@#/%?=~_!:,.;]*[-a-zA-Z0-9+&@#/%=~_]\b and reading each match
+// with java.net.URI.getHost, but without regex backtracking, a URI per link or a substring per
+// repeated hostname. The URI rules that decide whether a host comes back (escapes, userinfo, IPv4,
+// hostname labels, port) are followed as java.net.URI implements them.
+public final class ExternalLinkScanner {
+
+    private ExternalLinkScanner() {}
+
+    public static Set<String> scan(CharSequence text) {
+        return scan(text, false);
+    }
+
+    // Protocol-relative links ([//example.org label] in wikitext) are not matched by the original
+    // pattern, so they are only recognized when asked for
+    public static Set<String> scan(CharSequence text, boolean includeProtocolRelative) {
+        var hostnames = new HostnameSet();
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            int bodyStart = linkBodyStart(text, i, includeProtocolRelative);
+            int end = bodyStart > 0 ? linkEnd(text, bodyStart) : -1;
+
+            if (end < 0) {
+                i++;
+                continue;
+            }
+
+            addHostname(text, bodyStart, end, hostnames);
+            i = end;
+        }
+
+        return hostnames.toSortedSet();
+    }
+
+    // Returns where the part after "http://", "https://" or "//" starts, or -1 when no link starts at i
+    private static int linkBodyStart(CharSequence text, int i, boolean includeProtocolRelative) {
+        char ch = text.charAt(i);
+
+        if (ch == 'h') {
+            int bodyStart = startsWith(text, i, "https://") ? i + 8
+                    : startsWith(text, i, "http://") ? i + 7
+                    : -1;
+            return bodyStart > 0 && !isWordBefore(text, i) ? bodyStart : -1;
+        }
+
+        if (includeProtocolRelative && ch == '/' && startsWith(text, i, "//")
+                && (i == 0 || !isLinkChar(text.charAt(i - 1)))) {
+            return i + 2;
+        }
+
+        return -1;
+    }
+
+    // Mirrors the greedy match with backtracking: the longest run of link characters, cut back to
+    // the last allowed end character that is followed by a word boundary
+    private static int linkEnd(CharSequence text, int bodyStart) {
+        int runEnd = bodyStart;
+        while (runEnd < text.length() && isLinkChar(text.charAt(runEnd))) {
+            runEnd++;
+        }
+
+        for (int end = runEnd; end > bodyStart; end--) {
+            if (isLinkEndChar(text.charAt(end - 1)) && isWordBefore(text, end) != isWordAt(text, end)) {
+                return end;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void addHostname(CharSequence text, int bodyStart, int end, HostnameSet hostnames) {
+        // java.net.URI rejects the whole link on a malformed escape or a second '#'
+        boolean fragment = false;
+        for (int i = bodyStart; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch == '%' && (i + 3 > end || !isHexDigit(text.charAt(i + 1)) || !isHexDigit(text.charAt(i + 2)))) {
+                return;
+            }
+            if (ch == '#') {
+                if (fragment) {
+                    return;
+                }
+                fragment = true;
+            }
+        }
+
+        int authorityEnd = bodyStart;
+        while (authorityEnd < end && "/?#".indexOf(text.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+
+        if (authorityEnd == bodyStart) {
+            return;
+        }
+
+        // userinfo@host:port; the first '@' ends the user info
+        int hostStart = bodyStart;
+        for (int i = bodyStart; i < authorityEnd; i++) {
+            if (text.charAt(i) == '@') {
+                hostStart = i + 1;
+                break;
+            }
+        }
+
+        int hostEnd = parseIPv4Address(text, hostStart, authorityEnd);
+        if (hostEnd <= hostStart) {
+            hostEnd = parseHostname(text, hostStart, authorityEnd);
+        }
+        if (hostEnd < 0 || !isValidPort(text, hostEnd, authorityEnd)) {
+            return;
+        }
+
+        // At least two labels and a top label of two characters or more, ignoring a trailing dot
+        int labelsEnd = hostEnd > hostStart && text.charAt(hostEnd - 1) == '.' ? hostEnd - 1 : hostEnd;
+        int lastDot = -1;
+        for (int i = labelsEnd - 1; i >= hostStart; i--) {
+            if (text.charAt(i) == '.') {
+                lastDot = i;
+                break;
+            }
+        }
+
+        if (lastDot >= 0 && labelsEnd - lastDot - 1 >= 2) {
+            hostnames.add(text, hostStart, hostEnd);
+        }
+    }
+
+    // An IPv4 address counts only when it is the whole host, as in URI.Parser.parseIPv4Address
+    private static int parseIPv4Address(CharSequence text, int start, int end) {
+        int runEnd = start;
+        while (runEnd < end && (isDigit(text.charAt(runEnd)) || text.charAt(runEnd) == '.')) {
+            runEnd++;
+        }
+
+        if (runEnd <= start) {
+            return -1;
+        }
+
+        int p = start;
+        for (int octet = 0; octet < 4; octet++) {
+            if (octet > 0) {
+                if (p >= runEnd || text.charAt(p) != '.') {
+                    return -1;
+                }
+                p++;
+            }
+
+            int q = p;
+            while (q < runEnd && isDigit(text.charAt(q))) {
+                q++;
+            }
+            if (q <= p || !fitsInByte(text, p, q)) {
+                return -1;
+            }
+            p = q;
+        }
+
+        if (p < runEnd || (p < end && text.charAt(p) != ':')) {
+            return -1;
+        }
+
+        return p;
+    }
+
+    // Leading zeros are allowed, as Integer.parseInt allows them
+    private static boolean fitsInByte(CharSequence text, int start, int end) {
+        while (start < end - 1 && text.charAt(start) == '0') {
+            start++;
+        }
+        if (end - start > 3) {
+            return false;
+        }
+
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value <= 255;
+    }
+
+    // Labels of ASCII letters, digits and inner hyphens; when there are several labels, the last one
+    // starts with a letter. As in URI.Parser.parseHostname, only a port may follow.
+    private static int parseHostname(CharSequence text, int start, int end) {
+        int p = start;
+        int lastLabel = -1;
+
+        do {
+            int q = p;
+            while (q < end && isAlphanumeric(text.charAt(q))) {
+                q++;
+            }
+            if (q <= p) {
+                break;
+            }
+            lastLabel = p;
+            p = q;
+
+            while (q < end && (isAlphanumeric(text.charAt(q)) || text.charAt(q) == '-')) {
+                q++;
+            }
+            if (q > p) {
+                if (text.charAt(q - 1) == '-') {
+                    return -1;
+                }
+                p = q;
+            }
+
+            if (p < end && text.charAt(p) == '.') {
+                p++;
+            } else {
+                break;
+            }
+        } while (p < end);
+
+        if ((p < end && text.charAt(p) != ':') || lastLabel < 0) {
+            return -1;
+        }
+        if (lastLabel > start && !isLetter(text.charAt(lastLabel))) {
+            return -1;
+        }
+
+        return p;
+    }
+
+    // An optional ':' and digits, making up the rest of the authority and fitting in an int
+    private static boolean isValidPort(CharSequence text, int start, int end) {
+        if (start == end) {
+            return true;
+        }
+        if (text.charAt(start) != ':') {
+            return false;
+        }
+
+        long port = 0;
+        for (int i = start + 1; i < end; i++) {
+            char ch = text.charAt(i);
+            if (!isDigit(ch)) {
+                return false;
+            }
+            port = port * 10 + (ch - '0');
+            if (port > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // java.util.regex \b since JDK 19: ASCII word characters, plus non-spacing marks that follow a letter or digit
+    private static boolean isWordBefore(CharSequence text, int index) {
+        if (index == 0) {
+            return false;
+        }
+        int ch = Character.codePointBefore(text, index);
+        return isWordChar(ch)
+                || (Character.getType(ch) == Character.NON_SPACING_MARK && hasBaseCharacter(text, index - 1));
+    }
+
+    private static boolean isWordAt(CharSequence text, int index) {
+        if (index >= text.length()) {
+            return false;
+        }
+        int ch = Character.codePointAt(text, index);
+        return isWordChar(ch)
+                || (Character.getType(ch) == Character.NON_SPACING_MARK && hasBaseCharacter(text, index));
+    }
+
+    private static boolean hasBaseCharacter(CharSequence text, int index) {
+        for (int i = index; i >= 0; i--) {
+            int ch = Character.codePointAt(text, i);
+            if (Character.isLetterOrDigit(ch)) {
+                return true;
+            }
+            if (Character.getType(ch) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(CharSequence text, int index, String prefix) {
+        if (index + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(index + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // [-a-zA-Z0-9+&@#/%?=~_!:,.;]
+    private static boolean isLinkChar(char ch) {
+        return isLinkEndChar(ch) || ch == '?' || ch == '!' || ch == ':' || ch == ',' || ch == '.' || ch == ';';
+    }
+
+    // [-a-zA-Z0-9+&@#/%=~_]
+    private static boolean isLinkEndChar(char ch) {
+        return isAlphanumeric(ch) || switch (ch) {
+            case '-', '+', '&', '@', '#', '/', '%', '=', '~', '_' -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isWordChar(int ch) {
+        return ch < 128 && (isAlphanumeric((char) ch) || ch == '_');
+    }
+
+    private static boolean isAlphanumeric(char ch) {
+        return isLetter(ch) || isDigit(ch);
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isHexDigit(char ch) {
+        return isDigit(ch) || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
+    }
+
+    private static char toLowerCase(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + 32) : ch;
+    }
+
+    // Open-addressing set of lowercased hostnames, looked up straight from the text so that
+    // a hostname repeated across the page is only turned into a String once
+    private static final class HostnameSet {
+
+        private String[] hostnames = new String[16];
+        private int[] hashes = new int[16];
+        private int size;
+
+        void add(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + toLowerCase(text.charAt(i));
+            }
+
+            int mask = hostnames.length - 1;
+            int slot = mix(hash) & mask;
+
+            while (hostnames[slot] != null) {
+                if (hashes[slot] == hash && matches(hostnames[slot], text, start, end)) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = toLowerCase(text.charAt(i));
+            }
+            hostnames[slot] = new String(chars);
+            hashes[slot] = hash;
+
+            if (++size * 2 > hostnames.length) {
+                grow();
+            }
+        }
+
+        Set<String> toSortedSet() {
+            Set<String> sortedHostnames = new TreeSet<>();
+            for (String hostname : hostnames) {
+                if (hostname != null) {
+                    sortedHostnames.add(hostname);
+                }
+            }
+            return sortedHostnames;
+        }
+
+        private static boolean matches(String hostname, CharSequence text, int start, int end) {
+            if (hostname.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (hostname.charAt(i - start) != toLowerCase(text.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private void grow() {
+            String[] oldHostnames = hostnames;
+            int[] oldHashes = hashes;
+            hostnames = new String[oldHostnames.length * 2];
+            hashes = new int[oldHostnames.length * 2];
+            int mask = hostnames.length - 1;
+
+            for (int i = 0; i < oldHostnames.length; i++) {
+                if (oldHostnames[i] != null) {
+                    int slot = mix(oldHashes[i]) & mask;
+                    while (hostnames[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hostnames[slot] = oldHostnames[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+    }
+
+}
@@ -1,41 +1,15 @@
 package io.github.plantaest.citron.helper;
 
 import com.google.common.net.InternetDomainName;
-import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff;
-import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff.HighlightRange;
-import io.quarkus.logging.Log;
 
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.net.Inet4Address;
-import java.net.Inet6Address;
-import java.net.InetAddress;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Helper {
 
-    private static final Pattern IPV4_PATTERN = Pattern.compile(
-            "^(25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9]?[0-9])(\\.(25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9]?[0-9])){3}$"
-    );
-
-    private static final Pattern HOSTNAME_PATTERN = Pattern.compile(
-            // Ref: https://stackoverflow.com/a/163398
-            "\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_!:,.;]*[-a-zA-Z0-9+&@#/%=~_]\\b",
-            Pattern.MULTILINE
-    );
-
     // Common helper function
 
     public static Reader readFromClasspath(final String filePath) throws FileNotFoundException {
@@ -51,10 +25,7 @@ public class Helper {
     // Helper function for classifier
 
     public static boolean isIPv4(String hostname) {
-        if (hostname == null || hostname.isBlank()) {
-            return false;
-        }
-        return IPV4_PATTERN.matcher(hostname).matches();
+        return hostname != null && isIPv4Literal(hostname, 0, hostname.length());
     }
 
     public static int countDot(String hostname) {
@@ -112,131 +83,127 @@ public class Helper {
 
     // Helper function for stream runner
 
+    // Recognizes IP literals only, so a username that looks like a hostname never causes a DNS lookup
     public static boolean isIP(String str) {
-        try {
-            InetAddress address = InetAddress.getByName(str);
-            return address instanceof Inet4Address || address instanceof Inet6Address;
-        } catch (UnknownHostException e) {
-            return false;
-        }
+        return str != null && (isIPv4Literal(str, 0, str.length()) || isIPv6Literal(str));
     }
 
-    public static List<DiffComparison> extractAddedDiffComparisons(List<Diff> diffs) {
-        List<DiffComparison> diffComparisons = new ArrayList<>();
+    // Dotted-quad with octets 0-255 and no leading zeros
+    private static boolean isIPv4Literal(String str, int start, int end) {
+        int dots = 0;
+        int digits = 0;
+        int octet = 0;
 
-        for (var diff : diffs) {
-            if (diff.text().isBlank()) {
-                continue;
-            }
+        for (int i = start; i < end; i++) {
+            char ch = str.charAt(i);
 
-            if (diff.type() == 1) {
-                diffComparisons.add(new DiffComparison(null, diff.text()));
-                continue;
+            if (ch >= '0' && ch <= '9') {
+                if (digits > 0 && octet == 0) {
+                    return false;
+                }
+                octet = octet * 10 + (ch - '0');
+                if (octet > 255) {
+                    return false;
+                }
+                digits++;
+            } else if (ch == '.' && digits > 0 && dots < 3) {
+                dots++;
+                digits = 0;
+                octet = 0;
+            } else {
+                return false;
             }
+        }
 
-            var highlightRanges = Optional.ofNullable(diff.highlightRanges()).orElse(List.of());
+        return dots == 3 && digits > 0;
+    }
 
-            if (highlightRanges.isEmpty()) {
-                continue;
-            }
+    // RFC 4291 text forms: full, "::"-compressed and with a trailing IPv4 part,
+    // optionally in brackets and with a zone ID
+    private static boolean isIPv6Literal(String str) {
+        int start = 0;
+        int end = str.length();
 
-            if (diff.type() == 3 || diff.type() == 5) {
-                boolean hasTypeZero = highlightRanges.stream().anyMatch(range -> range.type() == 0);
-                boolean allTypeZero = highlightRanges.stream().allMatch(range -> range.type() == 0);
-                List<HighlightRange> additionHighlightRanges = highlightRanges.stream()
-                        .filter(range -> range.type() == 0)
-                        .toList();
-                List<HighlightRange> deletionHighlightRanges = highlightRanges.stream()
-                        .filter(range -> range.type() == 1)
-                        .toList();
-
-                if (hasTypeZero) {
-                    if (allTypeZero) {
-                        diffComparisons.add(new DiffComparison(
-                                eliminateDiffTextByHighlightRanges(diff.text(), additionHighlightRanges),
-                                diff.text()
-                        ));
-                    } else {
-                        diffComparisons.add(new DiffComparison(
-                                eliminateDiffTextByHighlightRanges(diff.text(), additionHighlightRanges),
-                                eliminateDiffTextByHighlightRanges(diff.text(), deletionHighlightRanges)
-                        ));
-                    }
-                }
+        if (end >= 2 && str.charAt(0) == '[' && str.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+
+        int zone = str.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            if (zone == end - 1) {
+                return false;
             }
+            end = zone;
         }
 
-        return diffComparisons;
-    }
+        if (end - start < 2) {
+            return false;
+        }
 
-    private static String eliminateDiffTextByHighlightRanges(String text, List<HighlightRange> highlightRanges) {
-        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
-        List<Byte> bytes = new ArrayList<>();
+        int i = start;
+        int groups = 0;
+        boolean compressed = false;
 
-        for (var range : highlightRanges) {
-            for (int i = range.start(); i < range.start() + range.length(); i++) {
-                textBytes[i] = 0;
+        if (str.charAt(i) == ':') {
+            if (str.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i += 2;
+            if (i == end) {
+                return true;
             }
         }
 
-        for (byte b : textBytes) {
-            if (b != 0) {
-                bytes.add(b);
+        while (groups < 8) {
+            int groupStart = i;
+            while (i < end && i - groupStart <= 4 && isHexDigit(str.charAt(i))) {
+                i++;
             }
-        }
 
-        byte[] resultBytes = new byte[bytes.size()];
+            if (i < end && str.charAt(i) == '.') {
+                // The IPv4 part stands for the last two groups
+                return isIPv4Literal(str, groupStart, end) && (compressed ? groups + 2 <= 7 : groups + 2 == 8);
+            }
 
-        for (int i = 0; i < resultBytes.length; i++) {
-            resultBytes[i] = bytes.get(i);
-        }
+            int digits = i - groupStart;
+            if (digits == 0 || digits > 4) {
+                return false;
+            }
+            groups++;
 
-        return new String(resultBytes, StandardCharsets.UTF_8);
-    }
+            if (i == end) {
+                return compressed ? groups <= 7 : groups == 8;
+            }
+            if (str.charAt(i) != ':') {
+                return false;
+            }
+            i++;
 
-    public static List<String> extractHostnames(List<DiffComparison> addedDiffComparisons) {
-        Set<String> extractedHostnames = new TreeSet<>();
-
-        for (DiffComparison diffComparison : addedDiffComparisons) {
-            if (diffComparison.newText() != null) {
-                if (diffComparison.oldText() == null) {
-                    extractedHostnames.addAll(extractHostnamesFromText(diffComparison.newText()));
-                } else {
-                    Set<String> hostnamesFromOldText = extractHostnamesFromText(diffComparison.oldText());
-                    Set<String> hostnamesFromNewText = extractHostnamesFromText(diffComparison.newText());
-                    extractedHostnames.addAll(hostnamesFromNewText.stream()
-                            .filter(Predicate.not(hostnamesFromOldText::contains))
-                            .toList());
+            if (i < end && str.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+                if (i == end) {
+                    return groups <= 7;
                 }
+            } else if (i == end) {
+                return false;
             }
         }
 
-        return extractedHostnames.stream().toList();
+        return false;
     }
 
-    public static Set<String> extractHostnamesFromText(String text) {
-        Set<String> extractedHostnames = new TreeSet<>();
-
-        if (text.contains("http://") || text.contains("https://")) {
-            Matcher matcher = HOSTNAME_PATTERN.matcher(text);
-            while (matcher.find()) {
-                String link = matcher.group();
-                try {
-                    URI uri = new URI(link);
-                    String hostname = uri.getHost();
-                    if (hostname != null && hostname.contains(".")) {
-                        String[] parts = hostname.split("\\.");
-                        if (parts.length >= 2 && parts[parts.length - 1].length() >= 2) {
-                            extractedHostnames.add(hostname.toLowerCase());
-                        }
-                    }
-                } catch (URISyntaxException e) {
-                    Log.errorf("Unable to parse URI: %s", e);
-                }
-            }
-        }
+    private static boolean isHexDigit(char ch) {
+        return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
+    }
 
-        return extractedHostnames;
+    public static Set<String> extractHostnamesFromText(String text) {
+        return WikitextLinkTokenizer.extractHostnames(text);
     }
 
 }
@@ -0,0 +1,96 @@
+package io.github.plantaest.citron.helper;
+
+import io.github.plantaest.citron.client.WikiActionClient;
+import io.github.plantaest.citron.client.WikiActionClientManager;
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.dto.AllUsersResponse;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Members of each wiki's ignored user groups, loaded with list=allusers so that edits by established
+// users are recognized without a request. The index only answers "yes": a user missing from it may
+// have joined a group since the last refresh, so callers fall back to the per-user lookup.
+// Only StreamRunner uses it, so it is left out along with it rather than refreshing for nothing.
+@Singleton
+@IfBuildProperty(name = "citron.dev.enable-stream-runner", stringValue = "true")
+public class PrivilegedUserIndex {
+
+    // Groups every account is in implicitly; list=allusers rejects them in augroup
+    private static final Set<String> IMPLICIT_GROUPS = Set.of("*", "user", "autoconfirmed", "temp", "named");
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    WikiActionClientManager wikiActionClientManager;
+
+    // Replaced as a whole on every refresh, so lookups never see a half-loaded set
+    private final Map<String, Set<String>> members = new ConcurrentHashMap<>();
+
+    public boolean contains(String wikiId, String username) {
+        return members.getOrDefault(wikiId, Set.of()).contains(username);
+    }
+
+    // Applies a rights change seen on the stream until the next refresh picks it up
+    public void update(String wikiId, String username, List<String> newGroups) {
+        var wiki = citronConfig.spamModule().wikis().get(wikiId);
+        boolean privileged = wiki.ignoredUserGroups().stream()
+                .filter(group -> !IMPLICIT_GROUPS.contains(group))
+                .anyMatch(newGroups::contains);
+
+        members.compute(wikiId, (ignored, wikiMembers) -> {
+            Set<String> updatedMembers = new HashSet<>(wikiMembers != null ? wikiMembers : Set.of());
+            if (privileged) {
+                updatedMembers.add(username);
+            } else {
+                updatedMembers.remove(username);
+            }
+            return Set.copyOf(updatedMembers);
+        });
+    }
+
+    @Scheduled(every = "1h", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void refresh() {
+        for (var wiki : citronConfig.spamModule().wikis().values()) {
+            List<String> groups = wiki.ignoredUserGroups().stream()
+                    .filter(group -> !IMPLICIT_GROUPS.contains(group))
+                    .toList();
+
+            if (groups.isEmpty()) {
+                continue;
+            }
+
+            try {
+                Set<String> wikiMembers = load(wikiActionClientManager.getClient(wiki.wikiServerName()), groups);
+                members.put(wiki.wikiId(), Set.copyOf(wikiMembers));
+                Log.infof("Loaded %d members of %s on %s", wikiMembers.size(), groups, wiki.wikiId());
+            } catch (Exception e) {
+                // The previous set stays in use until a refresh succeeds
+                Log.errorf("Unable to load members of %s on %s: %s", groups, wiki.wikiId(), e.getMessage());
+            }
+        }
+    }
+
+    private static Set<String> load(WikiActionClient wikiActionClient, List<String> groups) {
+        Set<String> wikiMembers = new HashSet<>();
+        String augroup = String.join("|", groups);
+        String aufrom = null;
+
+        do {
+            AllUsersResponse response = wikiActionClient.getAllUsers(augroup, aufrom);
+            response.query().allUsers().forEach(user -> wikiMembers.add(user.name()));
+            aufrom = response._continue() != null ? response._continue().aufrom() : null;
+        } while (aufrom != null);
+
+        return wikiMembers;
+    }
+
+}
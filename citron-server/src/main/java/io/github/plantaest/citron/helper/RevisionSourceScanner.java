@@ -0,0 +1,203 @@
+package io.github.plantaest.citron.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Finds the hostnames in the "source" field of a revision response while the response is still being
+// read, so that the wikitext of a page is never held in memory as a whole. Everything before the field
+// is skipped with a minimal JSON walk, and the field value is unescaped into a fixed-size chunk that is
+// fed to a WikitextLinkTokenizer whenever it fills up. A chunk is cut right after a character that no
+// link can contain or touch (whitespace, brackets, quotes and so on), so scanning the chunks one by
+// one gives the same hostnames as scanning the whole source.
+public final class RevisionSourceScanner {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private RevisionSourceScanner() {}
+
+    public static Set<String> extractHostnames(InputStream response) throws IOException {
+        try (var reader = new InputStreamReader(response, StandardCharsets.UTF_8)) {
+            var scanner = new Scanner(reader);
+            return scanner.findSource() ? scanner.scanSource() : new TreeSet<>();
+        }
+    }
+
+    private static final class Scanner {
+
+        private final Reader reader;
+        private final char[] input = new char[8192];
+        private int inputPosition;
+        private int inputLength;
+
+        Scanner(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Leaves the reader right after the opening quote of the top-level "source" value
+        boolean findSource() throws IOException {
+            int depth = 0;
+            boolean expectKey = false;
+
+            for (int c = read(); c != -1; c = read()) {
+                switch (c) {
+                    case '{' -> {
+                        depth++;
+                        expectKey = depth == 1;
+                    }
+                    case '[' -> depth++;
+                    case '}', ']' -> depth--;
+                    case ',' -> expectKey = depth == 1;
+                    case '"' -> {
+                        if (!expectKey) {
+                            skipString();
+                            continue;
+                        }
+
+                        expectKey = false;
+
+                        if (readKeyEquals("source")) {
+                            int next = readNonWhitespace();
+                            if (next == ':') {
+                                next = readNonWhitespace();
+                            }
+                            // A page without a text slot comes back with "source": null
+                            return next == '"';
+                        }
+                    }
+                    default -> {
+                        // Colons, numbers, literals and whitespace carry nothing to track
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        Set<String> scanSource() throws IOException {
+            var tokenizer = new WikitextLinkTokenizer();
+            char[] chunk = new char[CHUNK_SIZE];
+            int length = 0;
+
+            for (int c = readStringChar(); c != -1; c = readStringChar()) {
+                chunk[length++] = (char) c;
+
+                if (length == chunk.length) {
+                    int cut = lastSafeCut(chunk, length);
+                    // Only a chunk made entirely of link characters has no safe cut; a link that long
+                    // is split here, which is the price of keeping memory bounded
+                    int end = cut > 0 ? cut : length;
+                    tokenizer.feed(CharBuffer.wrap(chunk, 0, end));
+                    System.arraycopy(chunk, end, chunk, 0, length - end);
+                    length -= end;
+                }
+            }
+
+            tokenizer.feed(CharBuffer.wrap(chunk, 0, length));
+            return tokenizer.finish();
+        }
+
+        // Returns the length of the longest prefix ending with a character that cannot be part of a
+        // link nor decide a word boundary next to one, or 0 when there is none. Letters of any script
+        // are excluded too, as a combining mark after one counts as a word character for \b.
+        private static int lastSafeCut(char[] chunk, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                char ch = chunk[i];
+
+                if (!Character.isLetterOrDigit(ch)
+                        && "-+&@#/%?=~_!:,.;".indexOf(ch) < 0
+                        && !Character.isSurrogate(ch)
+                        && Character.getType(ch) != Character.NON_SPACING_MARK) {
+                    return i + 1;
+                }
+            }
+
+            return 0;
+        }
+
+        private boolean readKeyEquals(String key) throws IOException {
+            int matched = 0;
+            boolean equal = true;
+
+            for (int c = readStringChar(); c != -1; c = readStringChar()) {
+                equal = equal && matched < key.length() && key.charAt(matched) == c;
+                matched++;
+            }
+
+            return equal && matched == key.length();
+        }
+
+        private void skipString() throws IOException {
+            while (readStringChar() != -1) {
+                // Unescaped content is not needed
+            }
+        }
+
+        // Returns the next unescaped character of a JSON string, or -1 at its closing quote
+        private int readStringChar() throws IOException {
+            int c = read();
+
+            if (c == '"') {
+                return -1;
+            }
+
+            if (c == -1) {
+                throw new IOException("Unexpected end of revision response inside a string");
+            }
+
+            if (c != '\\') {
+                return c;
+            }
+
+            int escaped = read();
+
+            return switch (escaped) {
+                case '"', '\\', '/' -> escaped;
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'u' -> {
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw new IOException("Malformed unicode escape in revision response");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    yield value;
+                }
+                default -> throw new IOException("Malformed escape in revision response");
+            };
+        }
+
+        private int readNonWhitespace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+            return c;
+        }
+
+        private int read() throws IOException {
+            if (inputPosition == inputLength) {
+                inputLength = reader.read(input);
+                inputPosition = 0;
+                if (inputLength <= 0) {
+                    inputLength = 0;
+                    return -1;
+                }
+            }
+            return input[inputPosition++];
+        }
+
+    }
+
+}
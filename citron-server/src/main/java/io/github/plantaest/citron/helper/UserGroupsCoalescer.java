@@ -0,0 +1,138 @@
+package io.github.plantaest.citron.helper;
+
+import io.github.plantaest.citron.client.WikiActionClientManager;
+import io.github.plantaest.citron.client.WikiRetry;
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.dto.UserGroupsResponse;
+import io.quarkus.logging.Log;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Looks up user groups for many changes with one Action API request per wiki: users asked for
+// within the batch window (or until the batch holds 50 names) are sent together as ususers=A|B|C
+// and each caller gets the groups of its own user back.
+@Singleton
+public class UserGroupsCoalescer {
+
+    // Ref: https://www.mediawiki.org/wiki/API:Users (ususers takes at most 50 names without apihighlimits)
+    private static final int MAX_BATCH_SIZE = 50;
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    WikiActionClientManager wikiActionClientManager;
+
+    // The batch still open for new names, per wiki server name
+    private final Map<String, Batch> openBatches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("user-groups-coalescer").daemon().factory());
+
+    public Uni<List<String>> getUserGroups(String wikiServerName, String username) {
+        return Uni.createFrom().completionStage(() -> enqueue(wikiServerName, username));
+    }
+
+    @PreDestroy
+    void cleanup() {
+        scheduler.shutdownNow();
+    }
+
+    private CompletableFuture<List<String>> enqueue(String wikiServerName, String username) {
+        while (true) {
+            Batch batch = openBatches.computeIfAbsent(wikiServerName, this::openBatch);
+            var future = batch.add(username);
+            if (future != null) {
+                return future;
+            }
+            // Closed between lookup and add; make room for a fresh batch
+            openBatches.remove(wikiServerName, batch);
+        }
+    }
+
+    private Batch openBatch(String wikiServerName) {
+        var batch = new Batch(wikiServerName);
+        long windowNanos = citronConfig.spamModule().userGroupsBatchWindow().toNanos();
+        scheduler.schedule(batch::flush, windowNanos, TimeUnit.NANOSECONDS);
+        return batch;
+    }
+
+    private final class Batch {
+
+        private final String wikiServerName;
+        private final Map<String, CompletableFuture<List<String>>> pending = new LinkedHashMap<>();
+        private boolean closed;
+
+        Batch(String wikiServerName) {
+            this.wikiServerName = wikiServerName;
+        }
+
+        // Returns null once the batch has been closed
+        synchronized CompletableFuture<List<String>> add(String username) {
+            if (closed) {
+                return null;
+            }
+
+            var future = pending.computeIfAbsent(username, ignored -> new CompletableFuture<>());
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                closed = true;
+                scheduler.execute(this::flush);
+            }
+            return future;
+        }
+
+        void flush() {
+            Map<String, CompletableFuture<List<String>>> usernames;
+
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                closed = true;
+                usernames = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+
+            openBatches.remove(wikiServerName, this);
+
+            Uni.createFrom()
+                    .deferred(() -> wikiActionClientManager.getClient(wikiServerName)
+                            .getUserGroupsAsync(String.join("|", usernames.keySet())))
+                    .plug(WikiRetry::withBackOff)
+                    .subscribe().with(
+                            response -> complete(usernames, response),
+                            failure -> {
+                                Log.errorf("Unable to retrieve user groups of %d users on %s: %s",
+                                        usernames.size(), wikiServerName, failure.getMessage());
+                                usernames.values().forEach(future -> future.completeExceptionally(failure));
+                            }
+                    );
+        }
+
+        private void complete(Map<String, CompletableFuture<List<String>>> usernames, UserGroupsResponse response) {
+            Map<String, List<String>> groupsByName = new HashMap<>();
+            for (var user : response.query().users()) {
+                // Missing and invalid users come back without groups
+                groupsByName.put(user.name(), Optional.ofNullable(user.groups()).orElse(List.of()));
+            }
+
+            usernames.forEach((username, future) -> future.complete(
+                    groupsByName.getOrDefault(username, List.of())));
+
+            Log.debugf("Retrieved user groups of %d users on %s in one request", usernames.size(), wikiServerName);
+        }
+
+    }
+
+}
@@ -0,0 +1,272 @@
+package io.github.plantaest.citron.helper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Finds the hostnames of external links in wikitext, including the ones a plain http(s):// match
+// misses: protocol-relative links ([//example.org label] or bare //example.org) and URLs given to
+// templates without a protocol ({{URL|example.org}}, {{cite web|url=example.org/...}}). Text can be
+// fed in consecutive chunks, as long as each chunk ends where ExternalLinkScanner could not be in the
+// middle of a link (RevisionSourceScanner cuts chunks that way). Template parameters are followed
+// with one pass over the characters and a stack of open templates, so the work stays linear in the
+// length of the text whatever its nesting.
+public final class WikitextLinkTokenizer {
+
+    // Longer parameter values are cut; the hostname comes first in a URL anyway
+    private static final int MAX_PARAMETER_LENGTH = 2048;
+    // Template and parameter names are cut here; none of the ones looked for comes close
+    private static final int MAX_NAME_LENGTH = 128;
+    // Deeper templates are only counted, so that a run of braces cannot grow the stack without bound
+    private static final int MAX_TEMPLATE_DEPTH = 32;
+    // Address parameters of the citation templates, which viwiki keeps in English, and of infoboxes.
+    // Listed one by one, as names like image_url or logo_url take file names instead
+    private static final Set<String> URL_PARAMETERS = Set.of(
+            "url", "archive-url", "archiveurl", "chapter-url", "chapterurl", "contribution-url",
+            "contributionurl", "entry-url", "article-url", "section-url", "sectionurl", "conference-url",
+            "conferenceurl", "transcript-url", "transcripturl", "lay-url", "layurl", "map-url", "mapurl",
+            "event-url", "eventurl", "episode-url", "website", "homepage", "trang web");
+    // A value ending in one of these is the name of an uploaded file, not a domain
+    private static final Set<String> FILE_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "svg", "webp", "tif", "tiff", "bmp", "pdf", "djvu", "ogg", "oga",
+            "ogv", "webm", "mp3", "mp4", "wav", "flac", "mid");
+
+    private final Set<String> hostnames = new TreeSet<>();
+    private final Deque<Template> templates = new ArrayDeque<>();
+    private int untrackedDepth;
+    private char previous;
+    private boolean lineStart = true;
+
+    public static Set<String> extractHostnames(CharSequence text) {
+        var tokenizer = new WikitextLinkTokenizer();
+        tokenizer.feed(text);
+        return tokenizer.finish();
+    }
+
+    public void feed(CharSequence chunk) {
+        hostnames.addAll(ExternalLinkScanner.scan(chunk, true));
+
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            char ch = chunk.charAt(i);
+
+            if (isMarkup(ch)) {
+                accept(ch);
+                continue;
+            }
+
+            // Plain text only goes into the parameter being read, if any
+            previous = ch;
+            if (ch != ' ' && ch != '\t') {
+                lineStart = false;
+            }
+            var template = templates.peek();
+            if (template != null) {
+                template.append(ch);
+            }
+        }
+    }
+
+    public Set<String> finish() {
+        while (!templates.isEmpty()) {
+            endParameter(templates.pop());
+        }
+        return hostnames;
+    }
+
+    private static boolean isMarkup(char ch) {
+        return switch (ch) {
+            case '{', '}', '[', ']', '|', '=', '\n' -> true;
+            default -> false;
+        };
+    }
+
+    private void accept(char ch) {
+        var template = templates.peek();
+        char before = previous;
+        previous = ch;
+
+        if (ch == '{' && before == '{') {
+            if (template != null) {
+                template.removeLast('{');
+            }
+            if (templates.size() < MAX_TEMPLATE_DEPTH) {
+                templates.push(new Template(false));
+            } else {
+                untrackedDepth++;
+            }
+            previous = 0;
+            lineStart = false;
+            return;
+        }
+
+        if (ch == '}' && before == '}' && template != null) {
+            template.removeLast('}');
+            if (untrackedDepth > 0) {
+                untrackedDepth--;
+            } else {
+                endParameter(templates.pop());
+            }
+            previous = 0;
+            return;
+        }
+
+        if (ch == '\n') {
+            // A parameter line seen without its template only lasts until the end of the line
+            if (template != null && template.implicit) {
+                endParameter(templates.pop());
+                template = templates.peek();
+            }
+            if (template != null) {
+                template.append(ch);
+            }
+            lineStart = true;
+            return;
+        }
+
+        if (ch == '|' && template == null && lineStart) {
+            // Diff lines of a template split across lines start with "|name=value"
+            templates.push(new Template(true));
+            lineStart = false;
+            return;
+        }
+
+        lineStart = false;
+
+        if (template == null) {
+            return;
+        }
+
+        if (ch == '[' && before == '[') {
+            template.linkDepth++;
+        } else if (ch == ']' && before == ']' && template.linkDepth > 0) {
+            template.linkDepth--;
+        } else if (ch == '|' && template.linkDepth == 0) {
+            endParameter(template);
+            return;
+        } else if (ch == '=' && template.linkDepth == 0 && template.part == Part.KEY) {
+            String parameterName = normalize(template.buffer);
+            template.startPart(isUrlParameter(parameterName)
+                    || (parameterName.equals("1") && template.urlTemplate)
+                    ? Part.VALUE
+                    : Part.SKIPPED);
+            return;
+        }
+
+        template.append(ch);
+    }
+
+    private void endParameter(Template template) {
+        switch (template.part) {
+            case NAME -> template.urlTemplate = isUrlTemplate(normalize(template.buffer));
+            case KEY -> {
+                // No '=', so this is a positional parameter
+                template.positionalCount++;
+                if (template.positionalCount == 1 && template.urlTemplate) {
+                    addBareHostname(template.buffer);
+                }
+            }
+            case VALUE -> addBareHostname(template.buffer);
+            case SKIPPED -> {
+                // Not a URL parameter
+            }
+        }
+
+        template.startPart(Part.KEY);
+    }
+
+    // Values with a protocol (or protocol-relative) are already covered by ExternalLinkScanner
+    private void addBareHostname(CharSequence value) {
+        String address = value.toString().strip();
+
+        if (address.isEmpty() || !Character.isLetterOrDigit(address.charAt(0)) || address.contains("//")
+                || isFileName(address)) {
+            return;
+        }
+
+        hostnames.addAll(ExternalLinkScanner.scan("http://" + address));
+    }
+
+    private static boolean isUrlParameter(String parameterName) {
+        return URL_PARAMETERS.contains(parameterName);
+    }
+
+    // File:Logo.png and Logo.png alike; a host followed by a port has its first dot before the colon
+    private static boolean isFileName(String address) {
+        int colon = address.indexOf(':');
+        int dot = address.indexOf('.');
+        if (colon >= 0 && (dot < 0 || colon < dot)) {
+            return true;
+        }
+
+        int lastDot = address.lastIndexOf('.');
+        return address.indexOf('/') < 0 && lastDot >= 0
+                && FILE_EXTENSIONS.contains(address.substring(lastDot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    // {{URL|example.org}} and {{Official website|example.org}} take the address as first parameter
+    private static boolean isUrlTemplate(String templateName) {
+        return templateName.equals("url") || templateName.equals("official website");
+    }
+
+    private static String normalize(CharSequence text) {
+        return text.toString().strip().replace('_', ' ').toLowerCase(Locale.ROOT);
+    }
+
+    private enum Part {
+        NAME,
+        // A parameter name, or the whole parameter when it turns out to be positional
+        KEY,
+        VALUE,
+        SKIPPED
+    }
+
+    private static final class Template {
+
+        private final boolean implicit;
+        private final StringBuilder buffer = new StringBuilder();
+        private Part part;
+        private int limit;
+        private boolean urlTemplate;
+        private int positionalCount;
+        private int linkDepth;
+        private boolean lastAppended;
+
+        Template(boolean implicit) {
+            this.implicit = implicit;
+            startPart(implicit ? Part.KEY : Part.NAME);
+        }
+
+        void startPart(Part part) {
+            this.part = part;
+            // Positional parameters are only kept whole for the templates that take an address that way
+            this.limit = switch (part) {
+                case NAME -> MAX_NAME_LENGTH;
+                case KEY -> urlTemplate ? MAX_PARAMETER_LENGTH : MAX_NAME_LENGTH;
+                case VALUE -> MAX_PARAMETER_LENGTH;
+                case SKIPPED -> 0;
+            };
+            buffer.setLength(0);
+            lastAppended = false;
+        }
+
+        void append(char ch) {
+            lastAppended = buffer.length() < limit;
+
+            if (lastAppended) {
+                buffer.append(ch);
+            }
+        }
+
+        // Drops the first brace of a pair that turned out to open or close a template
+        void removeLast(char ch) {
+            if (lastAppended && buffer.charAt(buffer.length() - 1) == ch) {
+                buffer.setLength(buffer.length() - 1);
+            }
+            lastAppended = false;
+        }
+
+    }
+
+}
@@ -6,5 +6,8 @@ import io.github.plantaest.citron.config.recordbuilder.Builder;
 public record ClassificationResult(
         String hostname,
         long label,
-        float probability
+        float probability,
+        int modelNumber,
+        // Duration of the inference call (batch) that produced this result
+        long latencyMicros
 ) {}
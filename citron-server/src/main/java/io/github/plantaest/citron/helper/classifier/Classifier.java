@@ -1,74 +1,88 @@
 package io.github.plantaest.citron.helper.classifier;
 
-import ai.onnxruntime.OnnxMap;
-import ai.onnxruntime.OnnxTensor;
-import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
-import ai.onnxruntime.OrtSession;
 import io.github.plantaest.citron.config.model.ModelManager;
-import io.github.plantaest.citron.enumeration.Model;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 @ApplicationScoped
 public class Classifier {
 
+    private static final int FEATURE_COUNT = 20;
+
     @Inject
     ModelManager modelManager;
 
-    public List<ClassificationResult> classify(List<HostnameFeature> hostnameFeatures, Model model) {
+    // Direct buffers are handed to onnxruntime (or the tree ensemble evaluator) without copying;
+    // one per thread keeps them safe to reuse, and each grows to the largest batch seen on that thread
+    private final ThreadLocal<FloatBuffer> featureBuffers = ThreadLocal.withInitial(() -> allocateFeatureBuffer(64));
+
+    public List<ClassificationResult> classify(List<HostnameFeature> hostnameFeatures, String modelId) {
         List<ClassificationResult> classificationResults = new ArrayList<>();
 
         if (hostnameFeatures.isEmpty()) {
             return classificationResults;
         }
 
+        var loadedModel = modelManager.acquire(modelId);
+        var featureBuffer = writeFeatures(hostnameFeatures);
+
         try {
-            var env = OrtEnvironment.getEnvironment();
-            var session = env.createSession(modelManager.getModel(model), new OrtSession.SessionOptions());
-            var featureValueRows = hostnameFeatures.stream()
-                    .map(this::convertToFloatArray)
-                    .toArray(float[][]::new);
-            var tensor = OnnxTensor.createTensor(env, featureValueRows);
-            var inputs = Map.of("float_input", tensor);
-
-            try (OrtSession.Result results = session.run(inputs)) {
-                if (results.get("output_label").isPresent() && results.get("output_probability").isPresent()) {
-                    var onnxLabels = (long[]) results.get("output_label").get().getValue();
-                    List<Long> labels = Arrays.stream(onnxLabels).boxed().toList();
-
-                    @SuppressWarnings("unchecked")
-                    var onnxProbs = (List<OnnxMap>) results.get("output_probability").get().getValue();
-                    List<Float> probs = new ArrayList<>();
-                    for (var prob : onnxProbs) {
-                        probs.add((float) prob.getValue().get(1L));
-                    }
-
-                    for (int i = 0; i < labels.size(); i++) {
-                        var classificationResult = ClassificationResultBuilder.builder()
-                                .hostname(hostnameFeatures.get(i).hostname())
-                                .label(labels.get(i))
-                                .probability(probs.get(i))
-                                .build();
-                        classificationResults.add(classificationResult);
-                    }
-                }
+            long start = System.nanoTime();
+            var predictions = loadedModel.predict(featureBuffer, hostnameFeatures.size(), FEATURE_COUNT);
+            long latencyMicros = (System.nanoTime() - start) / 1_000;
+
+            for (int i = 0; i < hostnameFeatures.size(); i++) {
+                var classificationResult = ClassificationResultBuilder.builder()
+                        .hostname(hostnameFeatures.get(i).hostname())
+                        .label(predictions.labels()[i])
+                        .probability(predictions.probabilities()[i])
+                        .modelNumber(loadedModel.number())
+                        .latencyMicros(latencyMicros)
+                        .build();
+                classificationResults.add(classificationResult);
             }
 
             return classificationResults;
         } catch (OrtException e) {
             throw new RuntimeException(e);
+        } finally {
+            loadedModel.release();
+        }
+    }
+
+    private FloatBuffer writeFeatures(List<HostnameFeature> hostnameFeatures) {
+        int capacity = hostnameFeatures.size() * FEATURE_COUNT;
+        FloatBuffer buffer = featureBuffers.get();
+
+        if (buffer.capacity() < capacity) {
+            buffer = allocateFeatureBuffer(Math.max(hostnameFeatures.size(), buffer.capacity() / FEATURE_COUNT * 2));
+            featureBuffers.set(buffer);
+        }
+
+        buffer.clear();
+
+        for (int i = 0; i < hostnameFeatures.size(); i++) {
+            writeFeatures(hostnameFeatures.get(i), buffer, i * FEATURE_COUNT);
         }
+
+        buffer.limit(capacity);
+        return buffer;
     }
 
-    private float[] convertToFloatArray(HostnameFeature hostnameFeature) {
-        float[] floats = new float[20];
+    private static FloatBuffer allocateFeatureBuffer(int rows) {
+        return ByteBuffer.allocateDirect(rows * FEATURE_COUNT * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
 
+    private void writeFeatures(HostnameFeature hostnameFeature, FloatBuffer buffer, int offset) {
         // [0] open_page_rank
         // [1] open_page_rank_available
         // [2] aka_rank
@@ -90,28 +104,26 @@ public class Classifier {
         // [18] is_top_domain
         // [19] is_top_private_domain
 
-        floats[0] = (float) hostnameFeature.openPageRank();
-        floats[1] = hostnameFeature.openPageRankAvailable() ? 1 : 0;
-        floats[2] = hostnameFeature.akaRank();
-        floats[3] = hostnameFeature.akaRankAvailable() ? 1 : 0;
-        floats[4] = hostnameFeature.trancoRank();
-        floats[5] = hostnameFeature.trancoRankAvailable() ? 1 : 0;
-        floats[6] = hostnameFeature.majesticMillionRank();
-        floats[7] = hostnameFeature.majesticMillionRankAvailable() ? 1 : 0;
-        floats[8] = hostnameFeature.cloudflareRadarAvailable() ? 1 : 0;
-        floats[9] = hostnameFeature.hasSpecialWord() ? 1 : 0;
-        floats[10] = hostnameFeature.commercialTld() ? 1 : 0;
-        floats[11] = hostnameFeature.entertainmentTld() ? 1 : 0;
-        floats[12] = hostnameFeature.gamblingTld() ? 1 : 0;
-        floats[13] = hostnameFeature.suspiciousTld() ? 1 : 0;
-        floats[14] = hostnameFeature.hostnameLength();
-        floats[15] = hostnameFeature.dotCount();
-        floats[16] = hostnameFeature.digitCount();
-        floats[17] = hostnameFeature.isIpv4() ? 1 : 0;
-        floats[18] = hostnameFeature.isTopDomain() ? 1 : 0;
-        floats[19] = hostnameFeature.isTopPrivateDomain() ? 1 : 0;
-
-        return floats;
+        buffer.put(offset, (float) hostnameFeature.openPageRank());
+        buffer.put(offset + 1, hostnameFeature.openPageRankAvailable() ? 1 : 0);
+        buffer.put(offset + 2, hostnameFeature.akaRank());
+        buffer.put(offset + 3, hostnameFeature.akaRankAvailable() ? 1 : 0);
+        buffer.put(offset + 4, hostnameFeature.trancoRank());
+        buffer.put(offset + 5, hostnameFeature.trancoRankAvailable() ? 1 : 0);
+        buffer.put(offset + 6, hostnameFeature.majesticMillionRank());
+        buffer.put(offset + 7, hostnameFeature.majesticMillionRankAvailable() ? 1 : 0);
+        buffer.put(offset + 8, hostnameFeature.cloudflareRadarAvailable() ? 1 : 0);
+        buffer.put(offset + 9, hostnameFeature.hasSpecialWord() ? 1 : 0);
+        buffer.put(offset + 10, hostnameFeature.commercialTld() ? 1 : 0);
+        buffer.put(offset + 11, hostnameFeature.entertainmentTld() ? 1 : 0);
+        buffer.put(offset + 12, hostnameFeature.gamblingTld() ? 1 : 0);
+        buffer.put(offset + 13, hostnameFeature.suspiciousTld() ? 1 : 0);
+        buffer.put(offset + 14, hostnameFeature.hostnameLength());
+        buffer.put(offset + 15, hostnameFeature.dotCount());
+        buffer.put(offset + 16, hostnameFeature.digitCount());
+        buffer.put(offset + 17, hostnameFeature.isIpv4() ? 1 : 0);
+        buffer.put(offset + 18, hostnameFeature.isTopDomain() ? 1 : 0);
+        buffer.put(offset + 19, hostnameFeature.isTopPrivateDomain() ? 1 : 0);
     }
 
 }
@@ -0,0 +1,234 @@
+package io.github.plantaest.citron.helper.classifier;
+
+import de.siegmar.fastcsv.reader.CsvReader;
+import io.github.plantaest.citron.helper.Helper;
+import io.quarkus.logging.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+// Domain list (one domain per line, ranked by line number) kept off-heap as sorted UTF-8 keys with
+// a parallel array of ranks, looked up by binary search. Lookups behave like the rank map it
+// replaces: a domain listed twice keeps the rank of its first line.
+//
+// Layout: magic, format version, entry count, key bytes length, key offsets (count + 1 ints),
+// ranks (count ints), then the key bytes. With a cache directory the index is written there once
+// per list version and mapped read-only on later starts, so neither heap nor startup time grows
+// with the size of the list; otherwise it is built into a direct buffer on each start.
+final class DomainRankIndex {
+
+    private static final int MAGIC = 0x43524958;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int offsetsStart;
+    private final int ranksStart;
+    private final int keysStart;
+
+    private DomainRankIndex(ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a domain rank index of format version " + FORMAT_VERSION);
+        }
+
+        int count = buffer.getInt(8);
+        long keysStart = HEADER_BYTES + (2L * count + 1) * Integer.BYTES;
+
+        if (count < 0 || keysStart + buffer.getInt(12) != buffer.limit()) {
+            throw new IllegalArgumentException("Truncated domain rank index");
+        }
+
+        this.buffer = buffer;
+        this.count = count;
+        this.offsetsStart = HEADER_BYTES;
+        this.ranksStart = offsetsStart + (count + 1) * Integer.BYTES;
+        this.keysStart = (int) keysStart;
+    }
+
+    static DomainRankIndex load(String resourcePath, Optional<String> cacheDir) throws IOException {
+        var resource = Helper.class.getClassLoader().getResource(resourcePath);
+
+        if (resource == null) {
+            throw new FileNotFoundException("Resource not found on classpath: " + resourcePath);
+        }
+
+        if (cacheDir.isEmpty()) {
+            return new DomainRankIndex(build(resourcePath, ByteBuffer::allocateDirect));
+        }
+
+        // Keyed on the content of the list, as ModelManager keys cached models: a list edited in place can keep
+        // its size, and jar entry times are not reliable (reproducible builds fix them)
+        String fileName = Path.of(resourcePath).getFileName().toString().replaceFirst("\\.csv$", "");
+        var indexPath = Path.of(cacheDir.get()).resolve("%s-%s-v%d.idx".formatted(
+                fileName, sha256(resource), FORMAT_VERSION));
+
+        if (Files.isRegularFile(indexPath)) {
+            try {
+                return new DomainRankIndex(map(indexPath));
+            } catch (IllegalArgumentException e) {
+                Log.warnf("Unable to read domain rank index %s, building it again: %s", indexPath, e.getMessage());
+                Files.deleteIfExists(indexPath);
+            }
+        }
+
+        var index = build(resourcePath, ByteBuffer::allocate);
+        Path partialIndex = null;
+
+        // Written under a temporary name and moved into place once complete,
+        // so another replica or an interrupted start never reads a partial file
+        try {
+            Files.createDirectories(indexPath.getParent());
+            partialIndex = Files.createTempFile(indexPath.getParent(), fileName + "-", ".idx.partial");
+            try (var channel = FileChannel.open(partialIndex, StandardOpenOption.WRITE)) {
+                while (index.hasRemaining()) {
+                    channel.write(index);
+                }
+            }
+            Files.move(partialIndex, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Log.infof("Saved domain rank index of %s to %s", resourcePath, indexPath);
+            return new DomainRankIndex(map(indexPath));
+        } catch (IOException e) {
+            Log.warnf("Unable to save domain rank index of %s, keeping it off-heap in memory: %s",
+                    resourcePath, e.getMessage());
+            if (partialIndex != null) {
+                Files.deleteIfExists(partialIndex);
+            }
+            return new DomainRankIndex(ByteBuffer.allocateDirect(index.limit()).put(index.rewind()).flip());
+        }
+    }
+
+    // Returns the rank of the domain, or -1 when it is not listed
+    int rank(String domain) {
+        int entry = find(domain);
+        return entry < 0 ? -1 : buffer.getInt(ranksStart + entry * Integer.BYTES);
+    }
+
+    boolean contains(String domain) {
+        return find(domain) >= 0;
+    }
+
+    private int find(String domain) {
+        byte[] key = domain.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(middle, key);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    // Compares the stored key of an entry with the given one, byte by byte as unsigned values
+    private int compareKey(int entry, byte[] key) {
+        int start = keysStart + buffer.getInt(offsetsStart + entry * Integer.BYTES);
+        int end = keysStart + buffer.getInt(offsetsStart + (entry + 1) * Integer.BYTES);
+        int length = Math.min(end - start, key.length);
+
+        for (int i = 0; i < length; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return Integer.compare(end - start, key.length);
+    }
+
+    private record Entry(byte[] key, int rank) {}
+
+    // The whole list is only held on the heap while the index is being built
+    private static ByteBuffer build(String resourcePath, IntFunction<ByteBuffer> allocator) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (var csvReader = CsvReader.builder().ofCsvRecord(Helper.readFromClasspath(resourcePath))) {
+            int rank = 1;
+            for (var record : csvReader) {
+                entries.add(new Entry(record.getField(0).getBytes(StandardCharsets.UTF_8), rank++));
+            }
+        }
+
+        // Equal keys end up ordered by rank, so keeping the first of each run keeps the first line
+        entries.sort(Comparator.comparing(Entry::key, Arrays::compareUnsigned).thenComparingInt(Entry::rank));
+
+        int count = 0;
+        long keyBytesLength = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i == 0 || !Arrays.equals(entries.get(i - 1).key(), entries.get(i).key())) {
+                entries.set(count++, entries.get(i));
+                keyBytesLength += entries.get(i).key().length;
+            }
+        }
+
+        long capacity = HEADER_BYTES + (2L * count + 1) * Integer.BYTES + keyBytesLength;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Domain list is too large for a rank index: " + resourcePath);
+        }
+
+        var buffer = allocator.apply((int) capacity);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt((int) keyBytesLength);
+
+        int keyOffset = 0;
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(keyOffset);
+            keyOffset += entries.get(i).key().length;
+        }
+        buffer.putInt(keyOffset);
+
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(entries.get(i).rank());
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.put(entries.get(i).key());
+        }
+
+        return buffer.flip();
+    }
+
+    // Streamed, so that the list is never held on the heap as a whole just to be hashed
+    private static String sha256(URL resource) throws IOException {
+        try (var inputStream = new DigestInputStream(resource.openStream(), MessageDigest.getInstance("SHA-256"))) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(inputStream.getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+}
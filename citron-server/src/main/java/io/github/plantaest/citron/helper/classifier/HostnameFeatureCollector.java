@@ -16,10 +16,7 @@ import org.eclipse.microprofile.rest.client.inject.RestClient;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Startup
@@ -32,10 +29,10 @@ public class HostnameFeatureCollector {
     @RestClient
     OpenPageRankClient openPageRankClient;
 
-    private Map<String, Integer> akaRanks;
-    private Map<String, Integer> trancoRanks;
-    private Map<String, Integer> majesticMillionRanks;
-    private Set<String> cloudflareRadarDomains;
+    private DomainRankIndex akaRanks;
+    private DomainRankIndex trancoRanks;
+    private DomainRankIndex majesticMillionRanks;
+    private DomainRankIndex cloudflareRadarDomains;
 
     private Set<String> specialWords;
     private Set<String> commercialTlds;
@@ -45,16 +42,18 @@ public class HostnameFeatureCollector {
 
     @PostConstruct
     void init() throws IOException {
-        try (var akaRanksReader = CsvReader.builder()
-                .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().akaRanksFilePath()));
-             var trancoRanksReader = CsvReader.builder()
-                     .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().trancoRanksFilePath()));
-             var majesticMillionRanksReader = CsvReader.builder()
-                     .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().majesticMillionRanksFilePath()));
-             var cloudflareRadarDomainsReader = CsvReader.builder()
-                     .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().cloudflareRadarDomainsFilePath()));
-             var specialWordsReader = CsvReader.builder()
-                     .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().specialWordsFilePath()));
+        var classifierConfig = citronConfig.classifier();
+        var rankIndexCacheDir = classifierConfig.rankIndexCacheDir();
+
+        akaRanks = DomainRankIndex.load(classifierConfig.akaRanksFilePath(), rankIndexCacheDir);
+        trancoRanks = DomainRankIndex.load(classifierConfig.trancoRanksFilePath(), rankIndexCacheDir);
+        majesticMillionRanks = DomainRankIndex.load(classifierConfig.majesticMillionRanksFilePath(), rankIndexCacheDir);
+        // Only membership is looked up in the Cloudflare Radar list
+        cloudflareRadarDomains = DomainRankIndex.load(classifierConfig.cloudflareRadarDomainsFilePath(),
+                rankIndexCacheDir);
+
+        try (var specialWordsReader = CsvReader.builder()
+                .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().specialWordsFilePath()));
              var commercialTldsReader = CsvReader.builder()
                      .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().commercialTldsFilePath()));
              var entertainmentTldsReader = CsvReader.builder()
@@ -64,10 +63,6 @@ public class HostnameFeatureCollector {
              var suspiciousTldsReader = CsvReader.builder()
                      .ofCsvRecord(Helper.readFromClasspath(citronConfig.classifier().suspiciousTldsFilePath()))
         ) {
-            akaRanks = createRankMap(akaRanksReader);
-            trancoRanks = createRankMap(trancoRanksReader);
-            majesticMillionRanks = createRankMap(majesticMillionRanksReader);
-            cloudflareRadarDomains = createPlainSet(cloudflareRadarDomainsReader);
             specialWords = createPlainSet(specialWordsReader);
             commercialTlds = createPlainSet(commercialTldsReader);
             entertainmentTlds = createPlainSet(entertainmentTldsReader);
@@ -96,12 +91,12 @@ public class HostnameFeatureCollector {
                 .hostname(hostname)
                 .openPageRank(openPageRank)
                 .openPageRankAvailable(openPageRank != -1)
-                .akaRank(Optional.ofNullable(akaRanks.get(topPrivateDomain)).orElse(-1))
-                .akaRankAvailable(akaRanks.containsKey(topPrivateDomain))
-                .trancoRank(Optional.ofNullable(trancoRanks.get(topDomain)).orElse(-1))
-                .trancoRankAvailable(trancoRanks.containsKey(topDomain))
-                .majesticMillionRank(Optional.ofNullable(majesticMillionRanks.get(topPrivateDomain)).orElse(-1))
-                .majesticMillionRankAvailable(majesticMillionRanks.containsKey(topPrivateDomain))
+                .akaRank(akaRanks.rank(topPrivateDomain))
+                .akaRankAvailable(akaRanks.contains(topPrivateDomain))
+                .trancoRank(trancoRanks.rank(topDomain))
+                .trancoRankAvailable(trancoRanks.contains(topDomain))
+                .majesticMillionRank(majesticMillionRanks.rank(topPrivateDomain))
+                .majesticMillionRankAvailable(majesticMillionRanks.contains(topPrivateDomain))
                 .cloudflareRadarAvailable(cloudflareRadarDomains.contains(topDomain))
                 .hasSpecialWord(specialWords.stream().anyMatch(hostname::contains))
                 .commercialTld(commercialTlds.contains(tld))
@@ -127,16 +122,4 @@ public class HostnameFeatureCollector {
                 .collect(Collectors.toSet());
     }
 
-    private Map<String, Integer> createRankMap(CsvReader<CsvRecord> csvReader) {
-        AtomicInteger counter = new AtomicInteger(1);
-        return csvReader.stream()
-                .map((record) -> record.getField(0))
-                .collect(Collectors.toMap(
-                        item -> item,
-                        item -> counter.getAndIncrement(),
-                        (existing, replacement) -> existing
-                ));
-
-    }
-
 }
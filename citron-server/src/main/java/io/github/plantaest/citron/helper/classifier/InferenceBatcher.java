@@ -0,0 +1,192 @@
+package io.github.plantaest.citron.helper.classifier;
+
+import io.github.plantaest.citron.config.CitronConfig;
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.eclipse.microprofile.context.ManagedExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Collects hostname features submitted by concurrent changes and classifies them
+// in one session run per model, flushing when the batch is full or the oldest row
+// has waited for the configured maximum time.
+@Singleton
+public class InferenceBatcher {
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    Classifier classifier;
+    @Inject
+    ManagedExecutor managedExecutor;
+
+    private final Map<String, Batcher> batchers = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    public CompletableFuture<ClassificationResult> submit(HostnameFeature hostnameFeature, String modelId) {
+        if (shutdown) {
+            return CompletableFuture.failedFuture(shuttingDown());
+        }
+
+        if (!citronConfig.classifier().batching().enabled()) {
+            try {
+                return CompletableFuture.completedFuture(
+                        classifier.classify(List.of(hostnameFeature), modelId).getFirst());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        var pendingRow = new PendingRow(hostnameFeature, new CompletableFuture<>());
+        var batcher = batchers.computeIfAbsent(modelId, Batcher::new);
+        batcher.queue.add(pendingRow);
+
+        // The worker may have drained the queue for the last time since the check above
+        if (shutdown) {
+            batcher.failPendingRows();
+        }
+
+        return pendingRow.future();
+    }
+
+    public CompletableFuture<List<ClassificationResult>> classify(List<HostnameFeature> hostnameFeatures, String modelId) {
+        // Without batching, the hostnames of a change still share one session run
+        if (!citronConfig.classifier().batching().enabled()) {
+            if (shutdown) {
+                return CompletableFuture.failedFuture(shuttingDown());
+            }
+
+            try {
+                return CompletableFuture.completedFuture(classifier.classify(hostnameFeatures, modelId));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        var futures = hostnameFeatures.stream()
+                .map(hostnameFeature -> submit(hostnameFeature, modelId))
+                .toList();
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    // Shadow scores must never hold up the active model: batched rows go to the model's own batcher
+    // thread, and without batching they are classified on the managed executor instead of inline
+    public CompletableFuture<List<ClassificationResult>> classifyInBackground(List<HostnameFeature> hostnameFeatures,
+                                                                            String modelId) {
+        if (shutdown) {
+            return CompletableFuture.failedFuture(shuttingDown());
+        }
+
+        if (citronConfig.classifier().batching().enabled()) {
+            return classify(hostnameFeatures, modelId);
+        }
+
+        return CompletableFuture.supplyAsync(() -> classifier.classify(hostnameFeatures, modelId), managedExecutor);
+    }
+
+    @PreDestroy
+    void cleanup() {
+        shutdown = true;
+        for (var batcher : batchers.values()) {
+            batcher.worker.interrupt();
+        }
+    }
+
+    private static IllegalStateException shuttingDown() {
+        return new IllegalStateException("Inference batcher is shutting down");
+    }
+
+    private record PendingRow(
+            HostnameFeature hostnameFeature,
+            CompletableFuture<ClassificationResult> future
+    ) {}
+
+    private class Batcher {
+
+        private final String modelId;
+        private final BlockingQueue<PendingRow> queue = new LinkedBlockingQueue<>();
+        private final Thread worker;
+
+        Batcher(String modelId) {
+            this.modelId = modelId;
+            this.worker = Thread.ofPlatform()
+                    .name("inference-batcher-" + modelId)
+                    .daemon()
+                    .start(this::run);
+        }
+
+        private void run() {
+            int maxBatchSize = citronConfig.classifier().batching().maxBatchSize();
+            long maxWaitNanos = citronConfig.classifier().batching().maxWait().toNanos();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                List<PendingRow> batch = new ArrayList<>(maxBatchSize);
+
+                try {
+                    batch.add(queue.take());
+                    long deadline = System.nanoTime() + maxWaitNanos;
+
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingRow pendingRow = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (pendingRow == null) {
+                            // Take what is already queued without waiting any longer
+                            queue.drainTo(batch, maxBatchSize - batch.size());
+                            break;
+                        }
+                        batch.add(pendingRow);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                flush(batch);
+            }
+
+            failPendingRows();
+        }
+
+        private void failPendingRows() {
+            List<PendingRow> remainingRows = new ArrayList<>();
+            queue.drainTo(remainingRows);
+            remainingRows.forEach(row -> row.future().completeExceptionally(shuttingDown()));
+        }
+
+        private void flush(List<PendingRow> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                var hostnameFeatures = batch.stream().map(PendingRow::hostnameFeature).toList();
+                var classificationResults = classifier.classify(hostnameFeatures, modelId);
+
+                if (classificationResults.size() != batch.size()) {
+                    throw new IllegalStateException("Expected %d classification results but got %d"
+                            .formatted(batch.size(), classificationResults.size()));
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future().complete(classificationResults.get(i));
+                }
+
+                Log.debugf("Classified a batch of %d hostnames with model '%s'", batch.size(), modelId);
+            } catch (Exception e) {
+                batch.forEach(row -> row.future().completeExceptionally(e));
+            }
+        }
+
+    }
+
+}
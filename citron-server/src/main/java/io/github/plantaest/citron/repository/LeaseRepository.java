@@ -0,0 +1,73 @@
+package io.github.plantaest.citron.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jdbi.v3.core.Jdbi;
+
+import java.time.Duration;
+
+// Leases are compared against the database clock, so replicas do not need synchronized clocks
+@ApplicationScoped
+public class LeaseRepository {
+
+    @Inject
+    Jdbi jdbi;
+
+    // Takes the lease if it is free, expired or already held by the owner; returns whether the owner holds it
+    public boolean tryAcquire(String name, String owner, Duration duration) {
+        return jdbi.inTransaction(handle -> {
+            handle.createUpdate("""
+                            INSERT INTO citron_spam__lease (name, owner, expires_at)
+                            VALUES (:name, :owner, TIMESTAMPADD(MICROSECOND, :micros, NOW(3)))
+                            ON DUPLICATE KEY UPDATE
+                                owner = IF(expires_at < NOW(3) OR owner = VALUES(owner), VALUES(owner), owner),
+                                expires_at = IF(owner = VALUES(owner), VALUES(expires_at), expires_at)
+                            """)
+                    .bind("name", name)
+                    .bind("owner", owner)
+                    .bind("micros", duration.toNanos() / 1_000)
+                    .execute();
+
+            return handle
+                    .createQuery("SELECT owner = :owner FROM citron_spam__lease WHERE name = :name")
+                    .bind("name", name)
+                    .bind("owner", owner)
+                    .mapTo(boolean.class)
+                    .one();
+        });
+    }
+
+    public boolean renew(String name, String owner, Duration duration) {
+        return jdbi.inTransaction(handle -> handle
+                .createUpdate("""
+                        UPDATE citron_spam__lease
+                        SET expires_at = TIMESTAMPADD(MICROSECOND, :micros, NOW(3))
+                        WHERE name = :name AND owner = :owner
+                        """)
+                .bind("name", name)
+                .bind("owner", owner)
+                .bind("micros", duration.toNanos() / 1_000)
+                .execute() > 0);
+    }
+
+    public void release(String name, String owner) {
+        jdbi.useTransaction(handle -> handle
+                .createUpdate("DELETE FROM citron_spam__lease WHERE name = :name AND owner = :owner")
+                .bind("name", name)
+                .bind("owner", owner)
+                .execute());
+    }
+
+    public int countActive(String namePrefix) {
+        return jdbi.inTransaction(handle -> handle
+                .createQuery("""
+                        SELECT COUNT(*)
+                        FROM citron_spam__lease
+                        WHERE name LIKE CONCAT(:namePrefix, '%') AND expires_at >= NOW(3)
+                        """)
+                .bind("namePrefix", namePrefix)
+                .mapTo(int.class)
+                .one());
+    }
+
+}
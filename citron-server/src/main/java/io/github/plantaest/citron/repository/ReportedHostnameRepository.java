@@ -14,23 +14,45 @@ public class ReportedHostnameRepository {
     @Inject
     Jdbi jdbi;
 
-    public void save(ReportedHostname reportedHostname) {
-        jdbi.useTransaction(handle -> handle
-                .createUpdate("""
-                        INSERT INTO citron_spam__reported_hostname (
-                            id, created_at,
-                            wiki_id, user, page,
-                            revision_id, revision_timestamp,
-                            hostname, score, model_number
-                        ) VALUES (
-                            :id, :createdAt,
-                            :wikiId, :user, :page,
-                            :revisionId, :revisionTimestamp,
-                            :hostname, :score, :modelNumber
-                        )
-                        """)
-                .bindMethods(reportedHostname)
-                .execute());
+    // Returns false if the hostname was already reported for the same revision. Unlike INSERT IGNORE, any
+    // other error still fails; the row is read back as the driver counts a matched duplicate as affected,
+    // and a taken id, also a duplicate key, must not pass for that
+    public boolean save(ReportedHostname reportedHostname) {
+        return jdbi.inTransaction(handle -> {
+            handle.createUpdate("""
+                            INSERT INTO citron_spam__reported_hostname (
+                                id, created_at,
+                                wiki_id, user, page,
+                                revision_id, revision_timestamp,
+                                hostname, score, model_number
+                            ) VALUES (
+                                :id, :createdAt,
+                                :wikiId, :user, :page,
+                                :revisionId, :revisionTimestamp,
+                                :hostname, :score, :modelNumber
+                            )
+                            ON DUPLICATE KEY UPDATE id = id
+                            """)
+                    .bindMethods(reportedHostname)
+                    .execute();
+
+            long savedId = handle.createQuery("""
+                            SELECT id
+                            FROM citron_spam__reported_hostname
+                            WHERE wiki_id = :wikiId
+                                AND revision_id = :revisionId
+                                AND hostname = :hostname
+                            """)
+                    .bind("wikiId", reportedHostname.wikiId())
+                    .bind("revisionId", reportedHostname.revisionId())
+                    .bind("hostname", reportedHostname.hostname())
+                    .mapTo(Long.class)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Reported hostname id %d is already taken"
+                            .formatted(reportedHostname.id())));
+
+            return savedId == reportedHostname.id();
+        });
     }
 
     public List<ReportedHostname> findAllByDateRange(String wikiId, ZonedDateTime from, ZonedDateTime to) {
@@ -0,0 +1,33 @@
+package io.github.plantaest.citron.repository;
+
+import io.github.plantaest.citron.entity.ShadowScore;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jdbi.v3.core.Jdbi;
+
+@ApplicationScoped
+public class ShadowScoreRepository {
+
+    @Inject
+    Jdbi jdbi;
+
+    public void save(ShadowScore shadowScore) {
+        jdbi.useTransaction(handle -> handle
+                .createUpdate("""
+                        INSERT INTO citron_spam__shadow_score (
+                            reported_hostname_id, created_at,
+                            wiki_id, hostname,
+                            active_score, active_model_number, active_latency_micros,
+                            shadow_score, shadow_model_number, shadow_latency_micros
+                        ) VALUES (
+                            :reportedHostnameId, :createdAt,
+                            :wikiId, :hostname,
+                            :activeScore, :activeModelNumber, :activeLatencyMicros,
+                            :shadowScore, :shadowModelNumber, :shadowLatencyMicros
+                        )
+                        """)
+                .bindMethods(shadowScore)
+                .execute());
+    }
+
+}
@@ -0,0 +1,44 @@
+package io.github.plantaest.citron.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jdbi.v3.core.Jdbi;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// One checkpoint per shard, written only by the replica holding the shard
+@ApplicationScoped
+public class StreamCheckpointRepository {
+
+    @Inject
+    Jdbi jdbi;
+
+    public Map<Integer, String> findLastEventIds(String stream) {
+        return jdbi.inTransaction(handle -> handle
+                .createQuery("""
+                        SELECT shard, last_event_id
+                        FROM citron_spam__stream_checkpoint
+                        WHERE stream = :stream
+                        """)
+                .bind("stream", stream)
+                .map((rs, ctx) -> Map.entry(rs.getInt("shard"), rs.getString("last_event_id")))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    public void save(String stream, int shard, String lastEventId) {
+        jdbi.useTransaction(handle -> handle
+                .createUpdate("""
+                        INSERT INTO citron_spam__stream_checkpoint (stream, shard, last_event_id, updated_at)
+                        VALUES (:stream, :shard, :lastEventId, :updatedAt)
+                        ON DUPLICATE KEY UPDATE last_event_id = :lastEventId, updated_at = :updatedAt
+                        """)
+                .bind("stream", stream)
+                .bind("shard", shard)
+                .bind("lastEventId", lastEventId)
+                .bind("updatedAt", Instant.now())
+                .execute());
+    }
+
+}
@@ -0,0 +1,48 @@
+package io.github.plantaest.citron.runner;
+
+import java.util.TreeMap;
+
+// Tracks the newest event ID that is safe to resume from. Events are handed to worker threads and
+// finish out of order, so the watermark stops just before the oldest event still being processed;
+// resuming from it replays that event and everything after, and nothing before it is lost.
+final class EventWatermark {
+
+    private record InFlightEvent(String previousEventId) {}
+
+    private final TreeMap<Long, InFlightEvent> inFlightEvents = new TreeMap<>();
+    private long nextSequence;
+    private String lastEventId;
+
+    // Starts from the event the stream is resumed after, or from nothing
+    EventWatermark(String startEventId) {
+        this.lastEventId = startEventId;
+    }
+
+    // Records an event that needs no processing
+    synchronized void skip(String eventId) {
+        lastEventId = eventId;
+    }
+
+    // Records an event handed to a worker; the returned sequence is passed to complete when it is done
+    synchronized long begin(String eventId) {
+        long sequence = nextSequence++;
+        inFlightEvents.put(sequence, new InFlightEvent(lastEventId));
+        lastEventId = eventId;
+        return sequence;
+    }
+
+    synchronized void complete(long sequence) {
+        inFlightEvents.remove(sequence);
+    }
+
+    synchronized String safeEventId() {
+        return inFlightEvents.isEmpty()
+                ? lastEventId
+                : inFlightEvents.firstEntry().getValue().previousEventId();
+    }
+
+    synchronized int inFlightCount() {
+        return inFlightEvents.size();
+    }
+
+}
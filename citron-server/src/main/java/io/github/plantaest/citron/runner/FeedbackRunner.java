@@ -47,6 +47,8 @@ public class FeedbackRunner {
     IgnoredHostnameRepository ignoredHostnameRepository;
     @Inject
     TsidFactory tsidFactory;
+    @Inject
+    WikiExecutor wikiExecutor;
 
     @Scheduled(cron = "5 0 0 * * ?", timeZone = "UTC")
     public void sync() {
@@ -54,86 +56,92 @@ public class FeedbackRunner {
         ZonedDateTime yesterday = now.minusDays(1);
         var wikis = citronConfig.spamModule().wikis().values();
 
-        try {
-            for (var wiki : wikis) {
-                WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
-                WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
-                String reportPageTitle = "Project:Citron/Spam/%s.json".formatted(yesterday.toLocalDate());
-
-                Report yesterdayReport = null;
-
-                try {
-                    WikiPageResponse wikiPageResponse = wikiRestClient.getPage(reportPageTitle);
-                    yesterdayReport = objectMapper.readValue(wikiPageResponse.source(), Report.class);
-                } catch (Exception e) {
-                    Log.warnf("Unable to get or parse report from '%s' on %s; it may not exist yet: %s",
-                            reportPageTitle, wiki.wikiId(), e.getMessage());
-                }
-
-                if (yesterdayReport == null || yesterdayReport.feedbacks().isEmpty()) {
-                    continue;
-                }
-
-                // Save feedbacks to DB
-                for (Report.Feedback reportFeedback : yesterdayReport.feedbacks()) {
-                    Feedback feedback = FeedbackBuilder.builder()
-                            .id(tsidFactory.create().toLong())
-                            .createdAt(Instant.parse(reportFeedback.createdAt()))
-                            .createdBy(reportFeedback.createdBy())
-                            .wikiId(wiki.wikiId())
-                            .reportDate(yesterday.toLocalDate().toString())
-                            .hostname(reportFeedback.hostname())
-                            .status(reportFeedback.status())
-                            .hash(reportFeedback.hash())
-                            .build();
-                    feedbackRepository.save(feedback);
-                }
-
-                // Save ignored hostnames to DB
-                Set<String> ignoredHostnames = yesterdayReport.feedbacks().stream()
-                        .collect(Collectors.groupingBy(
-                                Report.Feedback::hostname,
-                                Collectors.mapping(Report.Feedback::status, Collectors.toSet())
-                        ))
-                        .entrySet()
-                        .stream()
-                        .filter(entry -> {
-                            Set<Integer> statuses = entry.getValue();
-                            return statuses.contains(0) && !statuses.contains(1);
-                        })
-                        .map(Map.Entry::getKey)
-                        .collect(Collectors.toSet());
-
-                for (String ignoredHostname : ignoredHostnames) {
-                    if (!ignoredHostnameRepository.exists(wiki.wikiId(), ignoredHostname)) {
-                        ignoredHostnameRepository.save(wiki.wikiId(), ignoredHostname);
-                    }
-                }
-
-                // Change value of "synced" property and save on wiki
-                String updatedAt = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'"));
-                Report report = ReportBuilder.builder(yesterdayReport)
-                        .updatedAt(updatedAt)
-                        .feedbacks(yesterdayReport.feedbacks().stream()
-                                .map(feedback -> ReportFeedbackBuilder.builder(feedback)
-                                        .synced(true)
-                                        .build())
-                                .toList())
-                        .build();
-
-                wikiActionClient.edit(Map.of(
-                        "title", reportPageTitle,
-                        "text", objectMapper.writeValueAsString(report),
-                        "summary", "Sync feedback of Citron/Spam report",
-                        "bot", "true",
-                        "contentmodel", "json"
-                ));
-
-                Log.infof("Synced feedback of report '%s' on %s", yesterday.toLocalDate(), wiki.wikiId());
+        wikiExecutor.forEach("sync", wikis, wiki -> {
+            try {
+                syncWiki(wiki, now, yesterday);
+            } catch (Exception e) {
+                Log.errorf("Unable to sync feedback of report '%s' on %s: %s",
+                        now.toLocalDate(), wiki.wikiId(), e.getMessage());
             }
+        });
+    }
+
+    private void syncWiki(CitronConfig.SpamModule.Wiki wiki, ZonedDateTime now, ZonedDateTime yesterday)
+            throws Exception {
+        WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
+        WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
+        String reportPageTitle = "Project:Citron/Spam/%s.json".formatted(yesterday.toLocalDate());
+
+        Report yesterdayReport = null;
+
+        try {
+            WikiPageResponse wikiPageResponse = wikiRestClient.getPage(reportPageTitle);
+            yesterdayReport = objectMapper.readValue(wikiPageResponse.source(), Report.class);
         } catch (Exception e) {
-            Log.errorf("Unable to sync feedback of report '%s': %s", now.toLocalDate(), e.getMessage());
+            Log.warnf("Unable to get or parse report from '%s' on %s; it may not exist yet: %s",
+                    reportPageTitle, wiki.wikiId(), e.getMessage());
         }
+
+        if (yesterdayReport == null || yesterdayReport.feedbacks().isEmpty()) {
+            return;
+        }
+
+        // Save feedbacks to DB
+        for (Report.Feedback reportFeedback : yesterdayReport.feedbacks()) {
+            Feedback feedback = FeedbackBuilder.builder()
+                    .id(tsidFactory.create().toLong())
+                    .createdAt(Instant.parse(reportFeedback.createdAt()))
+                    .createdBy(reportFeedback.createdBy())
+                    .wikiId(wiki.wikiId())
+                    .reportDate(yesterday.toLocalDate().toString())
+                    .hostname(reportFeedback.hostname())
+                    .status(reportFeedback.status())
+                    .hash(reportFeedback.hash())
+                    .build();
+            feedbackRepository.save(feedback);
+        }
+
+        // Save ignored hostnames to DB
+        Set<String> ignoredHostnames = yesterdayReport.feedbacks().stream()
+                .collect(Collectors.groupingBy(
+                        Report.Feedback::hostname,
+                        Collectors.mapping(Report.Feedback::status, Collectors.toSet())
+                ))
+                .entrySet()
+                .stream()
+                .filter(entry -> {
+                    Set<Integer> statuses = entry.getValue();
+                    return statuses.contains(0) && !statuses.contains(1);
+                })
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+
+        for (String ignoredHostname : ignoredHostnames) {
+            if (!ignoredHostnameRepository.exists(wiki.wikiId(), ignoredHostname)) {
+                ignoredHostnameRepository.save(wiki.wikiId(), ignoredHostname);
+            }
+        }
+
+        // Change value of "synced" property and save on wiki
+        String updatedAt = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'"));
+        Report report = ReportBuilder.builder(yesterdayReport)
+                .updatedAt(updatedAt)
+                .feedbacks(yesterdayReport.feedbacks().stream()
+                        .map(feedback -> ReportFeedbackBuilder.builder(feedback)
+                                .synced(true)
+                                .build())
+                        .toList())
+                .build();
+
+        wikiActionClient.edit(Map.of(
+                "title", reportPageTitle,
+                "text", objectMapper.writeValueAsString(report),
+                "summary", "Sync feedback of Citron/Spam report",
+                "bot", "true",
+                "contentmodel", "json"
+        ));
+
+        Log.infof("Synced feedback of report '%s' on %s", yesterday.toLocalDate(), wiki.wikiId());
     }
 
 }
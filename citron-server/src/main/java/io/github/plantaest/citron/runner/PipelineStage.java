@@ -0,0 +1,144 @@
+package io.github.plantaest.citron.runner;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// One step of the change pipeline, running on its own fixed pool of workers behind a bounded queue.
+// Exports the queue depth, the number of busy workers and the time spent in the step.
+// On virtual threads every task gets its own thread and a semaphore takes the place of the pool size,
+// so a step blocked on I/O does not tie up carrier threads.
+// Non-blocking steps go through call instead of run: they hold no thread while waiting, and the pool
+// size becomes the number of calls allowed in flight at once, with the rest waiting in the queue.
+final class PipelineStage {
+
+    private final int concurrency;
+    private final ExecutorService executor;
+    // Set on platform threads only
+    private final ThreadPoolExecutor pool;
+    // Set on virtual threads only
+    private final Semaphore permits;
+    private final Timer timer;
+    // Non-blocking calls waiting for a slot, and the number of calls currently in flight
+    private final Queue<Runnable> pendingCalls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+
+    PipelineStage(String name, int concurrency, int queueCapacity, boolean virtual, MeterRegistry meterRegistry) {
+        this.concurrency = concurrency;
+
+        if (virtual) {
+            this.pool = null;
+            this.permits = new Semaphore(concurrency, true);
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("pipeline-" + name + "-", 0).factory());
+        } else {
+            this.pool = new ThreadPoolExecutor(
+                    concurrency, concurrency,
+                    0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    Thread.ofPlatform().name("pipeline-" + name + "-", 0).daemon().factory()
+            );
+            this.permits = null;
+            this.executor = pool;
+        }
+
+        var tags = Tags.of("stage", name);
+        meterRegistry.gauge("citron.pipeline.queue.depth", tags, this, PipelineStage::queueDepth);
+        meterRegistry.gauge("citron.pipeline.active", tags, this, PipelineStage::active);
+        this.timer = Timer.builder("citron.pipeline.stage.duration")
+                .tags(tags)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    <T> Uni<T> run(Supplier<T> work) {
+        return Uni.createFrom().item(() -> permits != null ? runWithPermit(work) : timer.record(work))
+                .runSubscriptionOn(executor);
+    }
+
+    private <T> T runWithPermit(Supplier<T> work) {
+        permits.acquireUninterruptibly();
+        try {
+            return timer.record(work);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Cancelling the returned Uni drops the call if it is still queued, or cancels it in flight
+    <T> Uni<T> call(Supplier<Uni<T>> work) {
+        return Uni.createFrom().emitter(emitter -> {
+            var inFlight = new AtomicReference<Cancellable>();
+            Runnable pendingCall = () -> {
+                var sample = Timer.start();
+                inFlight.set(Uni.createFrom().deferred(work)
+                        .onTermination().invoke(() -> {
+                            sample.stop(timer);
+                            activeCalls.decrementAndGet();
+                            startPendingCalls();
+                        })
+                        .subscribe().with(emitter::complete, emitter::fail));
+                if (emitter.isCancelled()) {
+                    inFlight.get().cancel();
+                }
+            };
+
+            emitter.onTermination(() -> {
+                pendingCalls.remove(pendingCall);
+                var cancellable = inFlight.get();
+                if (cancellable != null) {
+                    cancellable.cancel();
+                }
+            });
+            pendingCalls.add(pendingCall);
+            startPendingCalls();
+        });
+    }
+
+    private void startPendingCalls() {
+        while (!pendingCalls.isEmpty()) {
+            int active = activeCalls.get();
+            if (active >= concurrency) {
+                return;
+            }
+            if (!activeCalls.compareAndSet(active, active + 1)) {
+                continue;
+            }
+
+            Runnable pendingCall = pendingCalls.poll();
+            if (pendingCall == null) {
+                // Another thread took it first; give the slot back and look again
+                activeCalls.decrementAndGet();
+                continue;
+            }
+            pendingCall.run();
+        }
+    }
+
+    private double queueDepth() {
+        return pendingCalls.size() + (pool != null ? pool.getQueue().size() : permits.getQueueLength());
+    }
+
+    private double active() {
+        return activeCalls.get() + (pool != null ? pool.getActiveCount() : concurrency - permits.availablePermits());
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -44,6 +44,8 @@ public class ReportRunner {
     WikiActionClientManager wikiActionClientManager;
     @Inject
     ReportedHostnameRepository reportedHostnameRepository;
+    @Inject
+    WikiExecutor wikiExecutor;
 
     @Scheduled(cron = "59 * * * * ?", timeZone = "UTC")
     public void report() {
@@ -51,119 +53,125 @@ public class ReportRunner {
         ZonedDateTime startOfDay = now.with(LocalTime.MIN);
         var wikis = citronConfig.spamModule().wikis().values();
 
+        wikiExecutor.forEach("report", wikis, wiki -> {
+            try {
+                reportWiki(wiki, now, startOfDay);
+            } catch (Exception e) {
+                Log.errorf("Unable to update report '%s' on %s: %s",
+                        now.toLocalDate(), wiki.wikiId(), e.getMessage());
+            }
+        });
+    }
+
+    private void reportWiki(CitronConfig.SpamModule.Wiki wiki, ZonedDateTime now, ZonedDateTime startOfDay)
+            throws Exception {
+        List<ReportedHostname> reportedHostnames = reportedHostnameRepository
+                .findAllByDateRange(wiki.wikiId(), startOfDay, now);
+
+        if (reportedHostnames.isEmpty()) {
+            return;
+        }
+
+        WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
+        WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
+        String reportPageTitle = "Project:Citron/Spam/%s.json".formatted(now.toLocalDate());
+
+        List<Report.Feedback> feedbacks = new ArrayList<>();
+        Report currentReport = ReportBuilder.builder().build();
+
         try {
-            for (var wiki : wikis) {
-                List<ReportedHostname> reportedHostnames = reportedHostnameRepository
-                        .findAllByDateRange(wiki.wikiId(), startOfDay, now);
-
-                if (reportedHostnames.isEmpty()) {
-                    continue;
-                }
-
-                WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
-                WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
-                String reportPageTitle = "Project:Citron/Spam/%s.json".formatted(now.toLocalDate());
-
-                List<Report.Feedback> feedbacks = new ArrayList<>();
-                Report currentReport = ReportBuilder.builder().build();
-
-                try {
-                    WikiPageResponse wikiPageResponse = wikiRestClient.getPage(reportPageTitle);
-                    currentReport = objectMapper.readValue(wikiPageResponse.source(), Report.class);
-                    feedbacks.addAll(currentReport.feedbacks());
-                } catch (Exception e) {
-                    // Handle only when this exception message appears:
-                    // Received: 'Not Found, status code 404' when invoking REST Client method:
-                    // 'io.github.plantaest.citron.client.WikiRestClient#getPage'
-                    if (e.getMessage().contains("404")) {
-                        Log.warnf("Unable to get or parse report from '%s' on %s; it may not exist yet: %s",
-                                reportPageTitle, wiki.wikiId(), e.getMessage());
-                    } else {
-                        continue;
-                    }
-                }
-
-                List<Report.Hostname> hostnames = reportedHostnames.stream()
-                        .collect(Collectors.groupingBy(ReportedHostname::hostname))
-                        .entrySet().stream()
-                        .map(entry -> {
-                            String hostname = entry.getKey();
-                            List<ReportedHostname> relatedReportedHostnames = entry.getValue();
-
-                            String time = relatedReportedHostnames.stream()
-                                    .map(ReportedHostname::revisionTimestamp)
-                                    .min(Long::compare)
-                                    .map(timestamp -> Instant.ofEpochSecond(timestamp)
-                                            .atOffset(ZoneOffset.UTC)
-                                            .format(DateTimeFormatter.ofPattern("HH:mm")))
-                                    .orElse("__:__");
-
-                            double averageScore = relatedReportedHostnames.stream()
-                                    .mapToDouble(ReportedHostname::score)
-                                    .average()
-                                    .orElse(-1);
-
-                            List<Long> revisionIds = relatedReportedHostnames.stream()
-                                    .map(ReportedHostname::revisionId)
-                                    .toList();
-
-                            return ReportHostnameBuilder.builder()
-                                    .hostname(hostname)
-                                    .time(time)
-                                    .score(averageScore)
-                                    .revisionIds(revisionIds)
-                                    .build();
-                        })
-                        .sorted((a, b) -> Double.compare(b.score(), a.score()))
-                        .toList();
-
-                Map<Long, Report.Revision> revisions = reportedHostnames.stream()
-                        .collect(Collectors.toMap(
-                                ReportedHostname::revisionId,
-                                rh -> ReportRevisionBuilder.builder()
-                                        .page(rh.page())
-                                        .user(rh.user())
-                                        .build(),
-                                (existing, replacement) -> existing,
-                                TreeMap::new
-                        ));
-
-                String updatedAt = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'"));
-
-                Report report = ReportBuilder.builder()
-                        .version(citronConfig.reportVersion())
-                        .updatedAt(updatedAt)
-                        .hostnames(hostnames)
-                        .revisions(revisions)
-                        .feedbacks(feedbacks)
-                        .build();
-
-                // Comparison
-                Report _currentReport = ReportBuilder.builder(currentReport)
-                        .updatedAt("__")
-                        .build();
-                Report _report = ReportBuilder.builder(report)
-                        .updatedAt("__")
-                        .build();
-
-                if (_currentReport.equals(_report)) {
-                    continue;
-                }
-
-                // Save report
-                wikiActionClient.edit(Map.of(
-                        "title", reportPageTitle,
-                        "text", objectMapper.writeValueAsString(report),
-                        "summary", "Update Citron/Spam report at %s".formatted(updatedAt),
-                        "bot", "true",
-                        "contentmodel", "json"
+            WikiPageResponse wikiPageResponse = wikiRestClient.getPage(reportPageTitle);
+            currentReport = objectMapper.readValue(wikiPageResponse.source(), Report.class);
+            feedbacks.addAll(currentReport.feedbacks());
+        } catch (Exception e) {
+            // Handle only when this exception message appears:
+            // Received: 'Not Found, status code 404' when invoking REST Client method:
+            // 'io.github.plantaest.citron.client.WikiRestClient#getPage'
+            if (e.getMessage().contains("404")) {
+                Log.warnf("Unable to get or parse report from '%s' on %s; it may not exist yet: %s",
+                        reportPageTitle, wiki.wikiId(), e.getMessage());
+            } else {
+                return;
+            }
+        }
+
+        List<Report.Hostname> hostnames = reportedHostnames.stream()
+                .collect(Collectors.groupingBy(ReportedHostname::hostname))
+                .entrySet().stream()
+                .map(entry -> {
+                    String hostname = entry.getKey();
+                    List<ReportedHostname> relatedReportedHostnames = entry.getValue();
+
+                    String time = relatedReportedHostnames.stream()
+                            .map(ReportedHostname::revisionTimestamp)
+                            .min(Long::compare)
+                            .map(timestamp -> Instant.ofEpochSecond(timestamp)
+                                    .atOffset(ZoneOffset.UTC)
+                                    .format(DateTimeFormatter.ofPattern("HH:mm")))
+                            .orElse("__:__");
+
+                    double averageScore = relatedReportedHostnames.stream()
+                            .mapToDouble(ReportedHostname::score)
+                            .average()
+                            .orElse(-1);
+
+                    List<Long> revisionIds = relatedReportedHostnames.stream()
+                            .map(ReportedHostname::revisionId)
+                            .toList();
+
+                    return ReportHostnameBuilder.builder()
+                            .hostname(hostname)
+                            .time(time)
+                            .score(averageScore)
+                            .revisionIds(revisionIds)
+                            .build();
+                })
+                .sorted((a, b) -> Double.compare(b.score(), a.score()))
+                .toList();
+
+        Map<Long, Report.Revision> revisions = reportedHostnames.stream()
+                .collect(Collectors.toMap(
+                        ReportedHostname::revisionId,
+                        rh -> ReportRevisionBuilder.builder()
+                                .page(rh.page())
+                                .user(rh.user())
+                                .build(),
+                        (existing, replacement) -> existing,
+                        TreeMap::new
                 ));
 
-                Log.infof("Updated report '%s' on %s", now.toLocalDate(), wiki.wikiId());
-            }
-        } catch (Exception e) {
-            Log.errorf("Unable to update report '%s': %s", now.toLocalDate(), e.getMessage());
+        String updatedAt = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'"));
+
+        Report report = ReportBuilder.builder()
+                .version(citronConfig.reportVersion())
+                .updatedAt(updatedAt)
+                .hostnames(hostnames)
+                .revisions(revisions)
+                .feedbacks(feedbacks)
+                .build();
+
+        // Comparison
+        Report _currentReport = ReportBuilder.builder(currentReport)
+                .updatedAt("__")
+                .build();
+        Report _report = ReportBuilder.builder(report)
+                .updatedAt("__")
+                .build();
+
+        if (_currentReport.equals(_report)) {
+            return;
         }
+
+        // Save report
+        wikiActionClient.edit(Map.of(
+                "title", reportPageTitle,
+                "text", objectMapper.writeValueAsString(report),
+                "summary", "Update Citron/Spam report at %s".formatted(updatedAt),
+                "bot", "true",
+                "contentmodel", "json"
+        ));
+
+        Log.infof("Updated report '%s' on %s", now.toLocalDate(), wiki.wikiId());
     }
 
     @Scheduled(cron = "59 59 * * * ?", timeZone = "UTC")
@@ -172,48 +180,54 @@ public class ReportRunner {
         ZonedDateTime startOfDay = now.with(LocalTime.MIN);
         var wikis = citronConfig.spamModule().wikis().values();
 
-        try {
-            for (var wiki : wikis) {
-                if (!reportedHostnameRepository.hasRecordsByDateRange(wiki.wikiId(), startOfDay, now)) {
-                    continue;
-                }
-
-                WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
-                WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
-                String marker = "{{#invoke:Citron/Spam|report|date=%s}}".formatted(now.toLocalDate());
-                String announcementPageContent = null;
-
-                try {
-                    WikiPageResponse wikiPageResponse = wikiRestClient.getPage(wiki.announcementPage());
-                    announcementPageContent = wikiPageResponse.source();
-                } catch (Exception e) {
-                    Log.errorf("Unable to retrieve content of page '%s' on %s: %s",
-                            wiki.announcementPage(), wiki.wikiId(), e.getMessage());
-                }
-
-                if (announcementPageContent == null || announcementPageContent.contains(marker)) {
-                    continue;
-                }
-
-                wikiActionClient.edit(Map.of(
-                        "title", wiki.announcementPage(),
-                        "text", marker + "\n~~~~",
-                        "summary", "Announce Citron/Spam report %s".formatted(now.toLocalDate()),
-                        "bot", "true",
-                        "section", "new",
-                        "sectiontitle", wiki.announcementSection()
-                                .replace("{day}", String.valueOf(now.getDayOfMonth()))
-                                .replace("{month}", String.valueOf(now.getMonthValue()))
-                                .replace("{year}", String.valueOf(now.getYear()))
-                ));
+        wikiExecutor.forEach("announce", wikis, wiki -> {
+            try {
+                announceWiki(wiki, now, startOfDay);
+            } catch (Exception e) {
+                Log.errorf("Unable to announce report '%s' on %s: %s",
+                        now.toLocalDate(), wiki.wikiId(), e.getMessage());
+            }
+        });
+    }
 
-                wikiActionClient.purge(wiki.announcementPage());
+    private void announceWiki(CitronConfig.SpamModule.Wiki wiki, ZonedDateTime now, ZonedDateTime startOfDay)
+            throws Exception {
+        if (!reportedHostnameRepository.hasRecordsByDateRange(wiki.wikiId(), startOfDay, now)) {
+            return;
+        }
 
-                Log.infof("Announced report '%s' on %s", now.toLocalDate(), wiki.wikiId());
-            }
+        WikiRestClient wikiRestClient = wikiRestClientManager.getClient(wiki.wikiServerName());
+        WikiActionClient wikiActionClient = wikiActionClientManager.getClient(wiki.wikiServerName());
+        String marker = "{{#invoke:Citron/Spam|report|date=%s}}".formatted(now.toLocalDate());
+        String announcementPageContent = null;
+
+        try {
+            WikiPageResponse wikiPageResponse = wikiRestClient.getPage(wiki.announcementPage());
+            announcementPageContent = wikiPageResponse.source();
         } catch (Exception e) {
-            Log.errorf("Unable to announce report '%s': %s", now.toLocalDate(), e.getMessage());
+            Log.errorf("Unable to retrieve content of page '%s' on %s: %s",
+                    wiki.announcementPage(), wiki.wikiId(), e.getMessage());
         }
+
+        if (announcementPageContent == null || announcementPageContent.contains(marker)) {
+            return;
+        }
+
+        wikiActionClient.edit(Map.of(
+                "title", wiki.announcementPage(),
+                "text", marker + "\n~~~~",
+                "summary", "Announce Citron/Spam report %s".formatted(now.toLocalDate()),
+                "bot", "true",
+                "section", "new",
+                "sectiontitle", wiki.announcementSection()
+                        .replace("{day}", String.valueOf(now.getDayOfMonth()))
+                        .replace("{month}", String.valueOf(now.getMonthValue()))
+                        .replace("{year}", String.valueOf(now.getYear()))
+        ));
+
+        wikiActionClient.purge(wiki.announcementPage());
+
+        Log.infof("Announced report '%s' on %s", now.toLocalDate(), wiki.wikiId());
     }
 
 }
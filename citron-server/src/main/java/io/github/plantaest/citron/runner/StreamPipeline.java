@@ -0,0 +1,102 @@
+package io.github.plantaest.citron.runner;
+
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.enumeration.ThreadMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.List;
+
+// Stages a change goes through in StreamRunner. Changes of all subscriptions enter through the admission
+// stage, which lets at most maxInFlight of them in, so a stage queue never needs more room than that.
+@Singleton
+public class StreamPipeline {
+
+    @Inject
+    CitronConfig citronConfig;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    private PipelineStage admission;
+    private PipelineStage userCheck;
+    private PipelineStage diffFetch;
+    private PipelineStage extract;
+    private PipelineStage filter;
+    private PipelineStage featureCollection;
+    private PipelineStage classify;
+    private PipelineStage persist;
+
+    @PostConstruct
+    void init() {
+        var pipeline = citronConfig.spamModule().pipeline();
+        int queueCapacity = pipeline.maxInFlight();
+        boolean virtual = citronConfig.execution().threadMode() == ThreadMode.VIRTUAL;
+
+        admission = new PipelineStage("admission", pipeline.maxInFlight(), queueCapacity, virtual, meterRegistry);
+        userCheck = new PipelineStage("user-check", pipeline.userCheckConcurrency(), queueCapacity, virtual,
+                meterRegistry);
+        diffFetch = new PipelineStage("diff-fetch", pipeline.diffFetchConcurrency(), queueCapacity, virtual,
+                meterRegistry);
+        extract = new PipelineStage("extract", pipeline.extractConcurrency(), queueCapacity, virtual,
+                meterRegistry);
+        filter = new PipelineStage("filter", pipeline.filterConcurrency(), queueCapacity, virtual,
+                meterRegistry);
+        featureCollection = new PipelineStage("feature-collection", pipeline.featureCollectionConcurrency(),
+                queueCapacity, virtual, meterRegistry);
+        // With batching off, inference runs on the calling thread in native code, which would pin a virtual thread
+        classify = new PipelineStage("classify", pipeline.classifyConcurrency(), queueCapacity, false,
+                meterRegistry);
+        persist = new PipelineStage("persist", pipeline.persistConcurrency(), queueCapacity, virtual,
+                meterRegistry);
+    }
+
+    @PreDestroy
+    void cleanup() {
+        List.of(admission, userCheck, diffFetch, extract, filter, featureCollection, classify, persist)
+                .forEach(PipelineStage::shutdown);
+    }
+
+    public int maxInFlight() {
+        return citronConfig.spamModule().pipeline().maxInFlight();
+    }
+
+    public int maxBufferedEvents() {
+        return citronConfig.spamModule().pipeline().maxBufferedEvents();
+    }
+
+    PipelineStage admission() {
+        return admission;
+    }
+
+    PipelineStage userCheck() {
+        return userCheck;
+    }
+
+    PipelineStage diffFetch() {
+        return diffFetch;
+    }
+
+    PipelineStage extract() {
+        return extract;
+    }
+
+    PipelineStage filter() {
+        return filter;
+    }
+
+    PipelineStage featureCollection() {
+        return featureCollection;
+    }
+
+    PipelineStage classify() {
+        return classify;
+    }
+
+    PipelineStage persist() {
+        return persist;
+    }
+
+}
@@ -1,37 +1,50 @@
 package io.github.plantaest.citron.runner;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.f4b6a3.tsid.TsidFactory;
 import io.github.plantaest.citron.client.WikiActionClientManager;
 import io.github.plantaest.citron.client.WikiRestClient;
 import io.github.plantaest.citron.client.WikiRestClientManager;
+import io.github.plantaest.citron.client.WikiRetry;
 import io.github.plantaest.citron.client.WikimediaStreamsClient;
 import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.config.cluster.ClusterCoordinator;
+import io.github.plantaest.citron.config.cluster.ShardListener;
+import io.github.plantaest.citron.config.model.ModelManager;
 import io.github.plantaest.citron.dto.Change;
 import io.github.plantaest.citron.dto.CheckHostnameResult;
-import io.github.plantaest.citron.dto.CompareRevisionsResponse;
-import io.github.plantaest.citron.dto.UserGroupsResponse;
-import io.github.plantaest.citron.dto.WikiRevisionResponse;
+import io.github.plantaest.citron.dto.PageLinksChange;
 import io.github.plantaest.citron.entity.ReportedHostname;
 import io.github.plantaest.citron.entity.ReportedHostnameBuilder;
-import io.github.plantaest.citron.enumeration.Model;
-import io.github.plantaest.citron.helper.DiffComparison;
+import io.github.plantaest.citron.entity.ShadowScoreBuilder;
+import io.github.plantaest.citron.enumeration.IngestionMode;
+import io.github.plantaest.citron.helper.DiffHostnameDecoder;
+import io.github.plantaest.citron.helper.EventPreFilter;
 import io.github.plantaest.citron.helper.Helper;
 import io.github.plantaest.citron.helper.IgnoredSuffixes;
+import io.github.plantaest.citron.helper.PrivilegedUserIndex;
+import io.github.plantaest.citron.helper.RevisionSourceScanner;
+import io.github.plantaest.citron.helper.UserGroupsCoalescer;
 import io.github.plantaest.citron.helper.classifier.ClassificationResult;
-import io.github.plantaest.citron.helper.classifier.Classifier;
 import io.github.plantaest.citron.helper.classifier.HostnameFeature;
 import io.github.plantaest.citron.helper.classifier.HostnameFeatureCollector;
+import io.github.plantaest.citron.helper.classifier.InferenceBatcher;
 import io.github.plantaest.citron.repository.IgnoredHostnameRepository;
 import io.github.plantaest.citron.repository.ReportedHostnameRepository;
+import io.github.plantaest.citron.repository.ShadowScoreRepository;
+import io.github.plantaest.citron.repository.StreamCheckpointRepository;
 import io.quarkus.arc.properties.IfBuildProperty;
-import io.quarkus.cache.CacheResult;
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.cache.CompositeCacheKey;
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.Startup;
 import io.quarkus.scheduler.Scheduled;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.mutiny.subscription.Cancellable;
+import io.smallrye.mutiny.subscription.BackPressureFailure;
+import io.smallrye.mutiny.tuples.Tuple2;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
@@ -40,16 +53,25 @@ import org.eclipse.microprofile.context.ManagedExecutor;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.reactive.client.SseEvent;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Startup
@@ -70,7 +92,9 @@ public class StreamRunner {
     @Inject
     HostnameFeatureCollector hostnameFeatureCollector;
     @Inject
-    Classifier classifier;
+    InferenceBatcher inferenceBatcher;
+    @Inject
+    ModelManager modelManager;
     @Inject
     ManagedExecutor managedExecutor;
     @Inject
@@ -78,185 +102,750 @@ public class StreamRunner {
     @Inject
     ReportedHostnameRepository reportedHostnameRepository;
     @Inject
+    ShadowScoreRepository shadowScoreRepository;
+    @Inject
     TsidFactory tsidFactory;
     @Inject
     IgnoredSuffixes ignoredSuffixes;
+    @Inject
+    EventPreFilter eventPreFilter;
+    @Inject
+    StreamCheckpointRepository streamCheckpointRepository;
+    @Inject
+    ClusterCoordinator clusterCoordinator;
+    @Inject
+    StreamPipeline streamPipeline;
+    @Inject
+    UserGroupsCoalescer userGroupsCoalescer;
+    @Inject
+    PrivilegedUserIndex privilegedUserIndex;
+    @Inject
+    DiffHostnameDecoder diffHostnameDecoder;
+    @Inject
+    @CacheName("user-groups-cache")
+    Cache userGroupsCache;
 
-    private Cancellable cancellable;
-    private final AtomicReference<String> lastEventIdRef = new AtomicReference<>();
-    private final AtomicLong eventCounter = new AtomicLong(0);
+    // Handles every shard held; catch-up subscriptions replay shards taken over from their checkpoint
+    private volatile StreamSubscription live;
+    private final List<StreamSubscription> catchUps = new CopyOnWriteArrayList<>();
+    // Guarded by this: shards whose checkpoints this replica writes, and the last checkpoint written for each
+    private final Set<Integer> heldShards = new HashSet<>();
+    private final Map<Integer, String> savedCheckpoints = new HashMap<>();
+    private boolean stopped;
+
+    private record ChangeContext(
+            String wikiId,
+            String user,
+            String page,
+            long revisionId,
+            long revisionTimestamp,
+            String type
+    ) {
+        @Override
+        public String toString() {
+            return "Change(wiki=%s, user=%s, page=%s, revision=%s, type=%s)"
+                    .formatted(wikiId, user, page, revisionId, type);
+        }
+    }
+
+    // Either the diff of an edit, the full source of a new page, or the hostnames of a new page
+    // whose source was scanned while it was being read
+    private record FetchedChange(
+            byte[] comparison,
+            String source,
+            List<String> sourceHostnames
+    ) {}
+
+    // Signals an ignored user inside a combined Uni; carries no stack trace as it is not an error
+    private static final class IgnoredUserException extends RuntimeException {
+        static final IgnoredUserException INSTANCE = new IgnoredUserException();
+
+        private IgnoredUserException() {
+            super("Ignored user", null, false, false);
+        }
+    }
+
+    private record Classification(
+            List<ClassificationResult> results,
+            Optional<CompletableFuture<List<ClassificationResult>>> shadowResults
+    ) {}
 
     @PostConstruct
     void init() {
-        cancellable = Multi.createFrom()
-                .deferred(() -> wikimediaStreamsClient.getRawRecentChanges(lastEventIdRef.get()))
+        // Creating an action client logs in with blocking calls, which must not happen later on the event loop
+        for (var wiki : citronConfig.spamModule().wikis().values()) {
+            try {
+                wikiActionClientManager.getClient(wiki.wikiServerName());
+            } catch (Exception e) {
+                Log.errorf("Unable to log in to %s: %s", wiki.wikiServerName(), e.getMessage());
+            }
+        }
+
+        String stream = citronConfig.spamModule().ingestionMode().getStream();
+        Set<Integer> shards = clusterCoordinator.getShards();
+        Map<Integer, String> checkpoints = citronConfig.spamModule().checkpointEnabled()
+                ? streamCheckpointRepository.findLastEventIds(stream)
+                : Map.of();
+
+        // The live subscription resumes from the checkpoint most held shards share,
+        // and shards left at other checkpoints by previous holders are replayed from theirs
+        Map<String, Set<Integer>> shardsByCheckpoint = shards.stream()
+                .filter(checkpoints::containsKey)
+                .collect(Collectors.groupingBy(checkpoints::get, Collectors.toSet()));
+        String liveCheckpoint = shardsByCheckpoint.entrySet().stream()
+                .max(Comparator.comparingInt(entry -> entry.getValue().size()))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+
+        synchronized (this) {
+            if (liveCheckpoint != null) {
+                Log.infof("Resuming %s from checkpoint %s", stream, liveCheckpoint);
+            }
+
+            live = StreamSubscription.live(liveCheckpoint);
+            heldShards.addAll(shards);
+            shards.stream()
+                    .filter(checkpoints::containsKey)
+                    .forEach(shard -> savedCheckpoints.put(shard, checkpoints.get(shard)));
+            connect(live);
+            shardsByCheckpoint.forEach((checkpoint, checkpointShards) -> {
+                if (!checkpoint.equals(liveCheckpoint)) {
+                    startCatchUp(checkpointShards, checkpoint);
+                }
+            });
+        }
+
+        // Shards that changed hands in the meantime are handled as if the listener had been told
+        Set<Integer> watchedShards = clusterCoordinator.watchShards(shardListener);
+        Set<Integer> acquiredShards = watchedShards.stream()
+                .filter(Predicate.not(shards::contains))
+                .collect(Collectors.toSet());
+        if (!acquiredShards.isEmpty()) {
+            shardListener.shardsAcquired(acquiredShards);
+        }
+        shards.stream().filter(Predicate.not(watchedShards::contains)).forEach(shardListener::shardLost);
+    }
+
+    @PreDestroy
+    void cleanup() {
+        clusterCoordinator.unwatchShards();
+
+        // Saved before cancelling, as cancelled changes count as done for the watermark
+        synchronized (this) {
+            saveCheckpoints();
+            stopped = true;
+        }
+
+        catchUps.forEach(StreamSubscription::cancel);
+        if (live != null) {
+            live.cancel();
+        }
+    }
+
+    // At most max-in-flight events of a subscription are handled at once, but the SSE connection does not
+    // pass that demand on to EventStreams, which keeps sending. Events waiting for a slot are buffered up to
+    // max-buffered-events; past that the connection fails and is reopened. Buffered events are dropped on
+    // reconnect, so the stream resumes from the watermark rather than from the last received event
+    private void connect(StreamSubscription subscription) {
+        var ingestionMode = citronConfig.spamModule().ingestionMode();
+
+        subscription.setCancellable(Multi.createFrom()
+                .deferred(() -> ingestionMode == IngestionMode.PAGE_LINKS_CHANGE
+                        ? wikimediaStreamsClient.getRawPageLinksChanges(subscription.watermark().safeEventId())
+                        : wikimediaStreamsClient.getRawRecentChanges(subscription.watermark().safeEventId()))
                 .onSubscription()
-                .invoke(() -> Log.info("Connected to Wikimedia EventStreams"))
+                .invoke(() -> Log.infof("Connected to Wikimedia EventStreams (%s, %s)",
+                        ingestionMode, subscription.name()))
+                .onOverflow().buffer(streamPipeline.maxBufferedEvents())
+                .onFailure(BackPressureFailure.class)
+                .invoke(() -> Log.warnf("More than %d events waiting on EventStreams (%s), reconnecting",
+                        streamPipeline.maxBufferedEvents(), subscription.name()))
                 .onFailure()
                 .retry().withBackOff(Duration.ofSeconds(1), Duration.ofMinutes(2)).indefinitely()
+                // An event that cannot be handled is logged and dropped, rather than ending the subscription
+                .onItem().transformToUni(event -> Uni.createFrom().deferred(() -> onItem(subscription, event))
+                        .onFailure().recoverWithUni(e -> {
+                            Log.errorf("Unable to handle event %s (%s): %s", event.id(), subscription.name(), e);
+                            return Uni.createFrom().voidItem();
+                        }))
+                .merge(streamPipeline.maxInFlight())
                 .subscribe()
                 .with(
-                        item -> Uni.createFrom().item(item)
-                                .onItem().invoke(this::onItem)
-                                .subscribe().asCompletionStage(),
-                        failure -> Log.errorf("Error on EventStreams: %s", failure),
-                        () -> Log.info("EventStreams closed")
-                );
+                        ignored -> {},
+                        failure -> Log.errorf("Error on EventStreams (%s): %s", subscription.name(), failure),
+                        () -> Log.infof("EventStreams closed (%s)", subscription.name())
+                ));
     }
 
-    @PreDestroy
-    void cleanup() {
-        if (cancellable != null) {
-            cancellable.cancel();
+    // Guarded by this
+    private void startCatchUp(Set<Integer> shards, String checkpoint) {
+        var catchUp = StreamSubscription.catchUp(live, shards, checkpoint);
+        Log.infof("Replaying shards %s from checkpoint %s", shards, checkpoint);
+        catchUps.add(catchUp);
+        connect(catchUp);
+    }
+
+    // Called by the cluster coordinator while it holds its own lock, so nothing here calls back into it
+    private final ShardListener shardListener = new ShardListener() {
+        @Override
+        public void shardsAcquired(Set<Integer> shards) {
+            synchronized (StreamRunner.this) {
+                if (stopped) {
+                    return;
+                }
+
+                // Looked up first, so that a failure leaves nothing behind when the coordinator hands the shards back
+                Map<Integer, String> checkpoints = citronConfig.spamModule().checkpointEnabled()
+                        ? streamCheckpointRepository.findLastEventIds(
+                                citronConfig.spamModule().ingestionMode().getStream())
+                        : Map.of();
+
+                // The live subscription handles the shards from now on, and the changes the previous holders
+                // had not finished are replayed from their checkpoints, with one catch-up per checkpoint
+                heldShards.addAll(shards);
+                shards.forEach(savedCheckpoints::remove);
+                shards.stream()
+                        .filter(checkpoints::containsKey)
+                        .collect(Collectors.groupingBy(checkpoints::get, Collectors.toSet()))
+                        .forEach((checkpoint, checkpointShards) -> startCatchUp(checkpointShards, checkpoint));
+            }
+        }
+
+        @Override
+        public void shardReleasing(int shard) {
+            synchronized (StreamRunner.this) {
+                saveCheckpoint(shard);
+                forgetShard(shard);
+            }
+        }
+
+        @Override
+        public void shardLost(int shard) {
+            synchronized (StreamRunner.this) {
+                forgetShard(shard);
+            }
+        }
+    };
+
+    // Guarded by this
+    private void forgetShard(int shard) {
+        heldShards.remove(shard);
+        savedCheckpoints.remove(shard);
+        catchUps.forEach(catchUp -> catchUp.removeShard(shard));
+    }
+
+    @Scheduled(every = "10s", delayed = "10s")
+    synchronized void saveCheckpoint() {
+        if (stopped) {
+            return;
+        }
+
+        saveCheckpoints();
+
+        // Catch-up subscriptions are closed only once their last changes are done, since cancelling them
+        // would count those changes as done
+        for (var catchUp : catchUps) {
+            if (catchUp.isFinished() && catchUp.watermark().inFlightCount() == 0) {
+                Log.infof("Finished %s", catchUp.name());
+                catchUp.cancel();
+                catchUps.remove(catchUp);
+            }
+        }
+    }
+
+    // Guarded by this
+    private void saveCheckpoints() {
+        for (int shard : heldShards) {
+            saveCheckpoint(shard);
+        }
+    }
+
+    // Guarded by this
+    private void saveCheckpoint(int shard) {
+        // Changes that could not be saved after the node was lost must be replayed by another replica
+        if (!citronConfig.spamModule().checkpointEnabled() || clusterCoordinator.hasLostNode() || live == null) {
+            return;
+        }
+
+        String safeEventId = catchUps.stream()
+                .filter(catchUp -> catchUp.shards().contains(shard))
+                .findFirst()
+                .orElse(live)
+                .watermark()
+                .safeEventId();
+
+        if (safeEventId != null && !safeEventId.equals(savedCheckpoints.get(shard))) {
+            try {
+                streamCheckpointRepository.save(citronConfig.spamModule().ingestionMode().getStream(), shard,
+                        safeEventId);
+                savedCheckpoints.put(shard, safeEventId);
+            } catch (Exception e) {
+                Log.errorf("Unable to save EventStreams checkpoint of shard %d: %s", shard, e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(every = "30s", delayed = "30s")
+    void reportLag() {
+        var subscription = live;
+        if (subscription != null && subscription.catchingUp().get() && subscription.lastEventTimestamp() > 0) {
+            Log.infof("Catching up on EventStreams: %s behind, %d changes in flight",
+                    Duration.ofSeconds(Instant.now().getEpochSecond() - subscription.lastEventTimestamp()),
+                    subscription.watermark().inFlightCount());
+        }
+
+        for (var catchUp : catchUps) {
+            if (!catchUp.isFinished() && catchUp.lastEventTimestamp() > 0) {
+                Log.infof("Replaying %s: %s behind, %d changes in flight", catchUp.name(),
+                        Duration.ofSeconds(Instant.now().getEpochSecond() - catchUp.lastEventTimestamp()),
+                        catchUp.watermark().inFlightCount());
+            }
         }
     }
 
     @Scheduled(every = "5m", delay = 5)
     void checkEventFlow() {
-        long count = eventCounter.getAndSet(0);
+        long count = live.eventCounter().getAndSet(0);
         if (count == 0) {
             Log.warn("No events received in the last 5 minutes. Checking stream...");
-            cleanup();
-            init();
+            reconnect(live);
         } else {
             Log.infof("Received %d events in the last 5 minutes", count);
         }
+
+        for (var catchUp : catchUps) {
+            if (!catchUp.isFinished() && catchUp.eventCounter().getAndSet(0) == 0) {
+                Log.warnf("No events received by the %s in the last 5 minutes. Checking stream...", catchUp.name());
+                reconnect(catchUp);
+            }
+        }
+    }
+
+    // The resume point is taken before cancelling, as cancelled changes count as done for the old watermark
+    private synchronized void reconnect(StreamSubscription subscription) {
+        if (stopped) {
+            return;
+        }
+
+        String resumeEventId = subscription.watermark().safeEventId();
+        subscription.cancel();
+        subscription.resetWatermark(resumeEventId);
+        connect(subscription);
     }
 
-    private void onItem(SseEvent<String> event) {
-        lastEventIdRef.set(event.id());
-        eventCounter.incrementAndGet();
-        Change change = parse(event.data());
+    // Completes once the event has left the pipeline, so the merge in connect only pulls
+    // another event when one of the in-flight slots is free
+    private Uni<Void> onItem(StreamSubscription subscription, SseEvent<String> event) {
+        subscription.eventCounter().incrementAndGet();
+
+        // A finished catch-up subscription only waits for its last changes to be done
+        if (subscription.isFinished()) {
+            return skip(subscription, event.id());
+        }
+
+        return citronConfig.spamModule().ingestionMode() == IngestionMode.PAGE_LINKS_CHANGE
+                ? onPageLinksChange(subscription, event.id(), event.data())
+                : onRecentChange(subscription, event.id(), event.data());
+    }
+
+    private Uni<Void> onRecentChange(StreamSubscription subscription, String eventId, String json) {
+        if (!eventPreFilter.acceptRecentChange(json)) {
+            return skip(subscription, eventId);
+        }
+
+        Change change = parse(json, Change.class);
         Set<String> allowedWikiIds = citronConfig.spamModule().wikis().keySet();
 
+        // Every replica keeps its own caches, so rights changes are applied regardless of shard ownership,
+        // once, by the live subscription
+        if (change != null
+                && subscription.isLive()
+                && !"canary".equals(change.meta().domain())
+                && "log".equals(change.type())
+                && "rights".equals(change.logType())
+                && allowedWikiIds.contains(change.wiki())
+        ) {
+            return track(subscription, eventId, () -> onRightsChange(change));
+        }
+
         if (change != null
                 && !"canary".equals(change.meta().domain())
                 && List.of("edit", "new").contains(change.type())
                 && !change.bot()
                 && !change.patrolled()
                 && allowedWikiIds.contains(change.wiki())
-                && isWithinLast5Minutes(change.timestamp())
+                && isWithinMaxAge(subscription, change.timestamp())
+                && handles(subscription, change.wiki(), change.revision()._new())
         ) {
-            managedExecutor.execute(() -> process(change));
+            return track(subscription, eventId, () -> process(change));
         }
+
+        return skip(subscription, eventId);
     }
 
-    private void process(Change change) {
-        Log.infof("Processing Change(wiki=%s, user=%s, page=%s, revision=%s, type=%s)",
-                change.wiki(), change.user(), change.title(), change.revision()._new(), change.type());
+    // Events without a revision or a performer cannot be attributed to an edit and are skipped
+    private Uni<Void> onPageLinksChange(StreamSubscription subscription, String eventId, String json) {
+        if (!eventPreFilter.acceptPageLinksChange(json)) {
+            return skip(subscription, eventId);
+        }
+
+        PageLinksChange linksChange = parse(json, PageLinksChange.class);
+        Set<String> allowedWikiIds = citronConfig.spamModule().wikis().keySet();
 
+        if (linksChange != null
+                && !"canary".equals(linksChange.meta().domain())
+                && linksChange.revId() != null
+                && linksChange.performer() != null
+                && !linksChange.performer().userIsBot()
+                && linksChange.addedLinks() != null
+                && linksChange.addedLinks().stream().anyMatch(PageLinksChange.Link::external)
+                && allowedWikiIds.contains(linksChange.database())
+                && isWithinMaxAge(subscription, Instant.parse(linksChange.meta().dt()).getEpochSecond())
+                && handles(subscription, linksChange.database(), linksChange.revId())
+        ) {
+            return track(subscription, eventId, () -> process(linksChange));
+        }
+
+        return skip(subscription, eventId);
+    }
+
+    // Drops the cached groups of a user whose groups were just changed, and moves the user in or out
+    // of the privileged user index; the next edit by that user looks the groups up again
+    private Uni<Void> onRightsChange(Change change) {
+        // The title is "<localized User namespace>:<username>", and usernames cannot contain a colon
+        String username = change.title().substring(change.title().indexOf(':') + 1);
+        JsonNode newGroupsNode = change.logParams() != null ? change.logParams().path("newgroups") : null;
+        List<String> newGroups = new ArrayList<>();
+
+        if (newGroupsNode != null && newGroupsNode.isArray()) {
+            newGroupsNode.forEach(group -> newGroups.add(group.asText()));
+        }
+
+        privilegedUserIndex.update(change.wiki(), username, newGroups);
+        Log.infof("Groups of %s on %s changed to %s", username, change.wiki(), newGroups);
+
+        return userGroupsCache.invalidate(new CompositeCacheKey(change.serverName(), username));
+    }
+
+    private Uni<Void> skip(StreamSubscription subscription, String eventId) {
+        subscription.watermark().skip(eventId);
+        return Uni.createFrom().voidItem();
+    }
+
+    // Events are recorded in stream order as they arrive; the admission stage then bounds the changes
+    // of all subscriptions in the pipeline together
+    private Uni<Void> track(StreamSubscription subscription, String eventId, Supplier<Uni<Void>> processing) {
+        var watermark = subscription.watermark();
+        long sequence = watermark.begin(eventId);
+        return streamPipeline.admission().call(processing)
+                .onTermination().invoke(() -> watermark.complete(sequence));
+    }
+
+    // The live subscription follows the shards held, and a catch-up subscription the shards it replays
+    private boolean handles(StreamSubscription subscription, String wikiId, long revisionId) {
+        int shard = clusterCoordinator.shardOf(wikiId, revisionId);
+        return subscription.isLive() ? clusterCoordinator.owns(shard) : subscription.shards().contains(shard);
+    }
+
+    private Uni<Void> process(Change change) {
+        var context = new ChangeContext(change.wiki(), change.user(), change.title(), change.revision()._new(),
+                change.timestamp(), change.type());
+
+        Log.infof("Processing %s", context);
+
+        // Both requests start at once; an ignored user fails the user check, which cancels the diff fetch.
+        // IP editors have no groups, so their edits skip the user check stage altogether
+        Uni<Void> userCheck = Helper.isIP(change.user())
+                ? Uni.createFrom().voidItem()
+                : streamPipeline.userCheck()
+                        .call(() -> isIgnoredUser(change.wiki(), change.serverName(), change.user()))
+                        .onItem().transformToUni(ignoredUser -> ignoredUser
+                                ? Uni.createFrom().<Void>failure(IgnoredUserException.INSTANCE)
+                                : Uni.createFrom().voidItem());
+        Uni<FetchedChange> diffFetch = streamPipeline.diffFetch().call(() -> fetch(change));
+
+        return Uni.combine().all().unis(userCheck, diffFetch).asTuple()
+                .map(Tuple2::getItem2)
+                .onFailure(IgnoredUserException.class).recoverWithNull()
+                .onItem().ifNotNull().transformToUni(fetchedChange -> streamPipeline.extract()
+                        .run(() -> extract(fetchedChange)))
+                .onItem().ifNotNull().transformToUni(extractedHostnames -> report(context, extractedHostnames))
+                .onFailure().recoverWithUni(e -> {
+                    Log.errorf("Unable to process %s: %s", context, e.getMessage());
+                    return Uni.createFrom().voidItem();
+                });
+    }
+
+    private Uni<FetchedChange> fetch(Change change) {
+        WikiRestClient wikiRestClient = wikiRestClientManager.getClient(change.serverName());
+
+        if (change.revision().old() != null) {
+            // Change type is "edit"
+            return wikiRestClient.compareRevisionsRawAsync(change.revision().old(), change.revision()._new())
+                    .plug(WikiRetry::withBackOff)
+                    .map(comparison -> new FetchedChange(comparison, null, null));
+        } else if (citronConfig.spamModule().streamPageSource()) {
+            // Change type is "new"; the response is consumed as it arrives, so the source is scanned while
+            // it is read, on the diff-fetch workers since the read waits on the network. The response is
+            // closed however the scan ends, including when an ignored user cancels it or the stage is full
+            return wikiRestClient.getRevisionStreamAsync(change.revision()._new())
+                    .plug(WikiRetry::withBackOff)
+                    .onItem().transformToUni(response -> streamPipeline.diffFetch()
+                            .run(() -> scanSource(response))
+                            .onTermination().invoke(() -> closeQuietly(response)))
+                    .map(sourceHostnames -> new FetchedChange(null, null, sourceHostnames));
+        } else {
+            // Change type is "new"
+            return wikiRestClient.getRevisionAsync(change.revision()._new())
+                    .plug(WikiRetry::withBackOff)
+                    .map(revision -> new FetchedChange(null, revision.source(), null));
+        }
+    }
+
+    private static List<String> scanSource(InputStream response) {
         try {
-            if (isIgnoredUser(change.wiki(), change.serverName(), change.user())) {
-                return;
-            }
+            return new ArrayList<>(RevisionSourceScanner.extractHostnames(response));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read revision source", e);
+        }
+    }
 
-            List<String> extractedHostnames = new ArrayList<>();
-            WikiRestClient wikiRestClient = wikiRestClientManager.getClient(change.serverName());
-
-            if (change.revision().old() != null) {
-                // Change type is "edit"
-                CompareRevisionsResponse comparison = wikiRestClient
-                        .compareRevisions(change.revision().old(), change.revision()._new());
-                List<DiffComparison> addedDiffComparisons = Helper.extractAddedDiffComparisons(comparison.diff());
-                extractedHostnames.addAll(Helper.extractHostnames(addedDiffComparisons));
-            } else {
-                // Change type is "new"
-                WikiRevisionResponse revision = wikiRestClient.getRevision(change.revision()._new());
-                extractedHostnames.addAll(Helper.extractHostnamesFromText(revision.source()));
-            }
+    // Closing the response while it is being scanned makes the scan fail, which is what a cancelled scan needs
+    private static void closeQuietly(InputStream response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            Log.debugf("Unable to close revision source: %s", e.getMessage());
+        }
+    }
 
-            if (extractedHostnames.isEmpty()) {
-                return;
-            }
+    private List<String> extract(FetchedChange fetchedChange) {
+        if (fetchedChange.sourceHostnames() != null) {
+            return fetchedChange.sourceHostnames();
+        }
+
+        return fetchedChange.comparison() != null
+                ? diffHostnameDecoder.extractHostnames(fetchedChange.comparison())
+                : new ArrayList<>(Helper.extractHostnamesFromText(fetchedChange.source()));
+    }
+
+    private Uni<Void> process(PageLinksChange linksChange) {
+        // Titles come in database key form, unlike the recentchange stream;
+        // the event carries no revision timestamp, and links are updated right after the revision is saved
+        var context = new ChangeContext(linksChange.database(), linksChange.performer().userText(),
+                linksChange.pageTitle().replace('_', ' '), linksChange.revId(),
+                Instant.parse(linksChange.meta().dt()).getEpochSecond(), "links-change");
+
+        Log.infof("Processing %s", context);
+
+        // Running the added links through the same extraction keeps hostnames identical to the diff path
+        return streamPipeline.userCheck()
+                .call(() -> isIgnoredUser(context.wikiId(), linksChange.meta().domain(), linksChange.performer()))
+                .onItem().transformToUni(ignoredUser -> ignoredUser
+                        ? Uni.createFrom().<List<String>>nullItem()
+                        : streamPipeline.extract().run(() -> new ArrayList<>(Helper.extractHostnamesFromText(
+                                linksChange.addedLinks().stream()
+                                        .filter(PageLinksChange.Link::external)
+                                        .map(PageLinksChange.Link::link)
+                                        .collect(Collectors.joining("\n"))))))
+                .onItem().ifNotNull().transformToUni(extractedHostnames -> report(context, extractedHostnames))
+                .onFailure().recoverWithUni(e -> {
+                    Log.errorf("Unable to process %s: %s", context, e.getMessage());
+                    return Uni.createFrom().voidItem();
+                });
+    }
+
+    private Uni<Void> report(ChangeContext context, List<String> extractedHostnames) {
+        if (extractedHostnames.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+
+        return streamPipeline.filter()
+                .run(() -> filterHostnames(context.wikiId(), extractedHostnames))
+                .onItem().transformToUni(filteredHostnames -> filteredHostnames.isEmpty()
+                        ? Uni.createFrom().<List<HostnameFeature>>nullItem()
+                        : streamPipeline.featureCollection().run(() -> filteredHostnames.stream()
+                                .map(hostnameFeatureCollector::collect)
+                                .toList()))
+                .onItem().ifNotNull().transformToUni(hostnameFeatures -> classify(context.wikiId(), hostnameFeatures))
+                .onItem().ifNotNull().transformToUni(classification -> streamPipeline.persist()
+                        .run(() -> persist(context, extractedHostnames, classification)))
+                .replaceWithVoid();
+    }
 
-            List<String> filteredHostnames = extractedHostnames.stream()
-                    .filter(Predicate.not(ignoredSuffixes::contains))
-                    .collect(Collectors.collectingAndThen(
-                            Collectors.toList(),
-                            hostnames -> ignoredHostnameRepository.checkHostnames(change.wiki(), hostnames)
-                    ))
-                    .stream()
-                    .filter(Predicate.not(CheckHostnameResult::existed))
-                    .map(CheckHostnameResult::hostname)
-                    .toList();
-
-            if (filteredHostnames.isEmpty()) {
-                return;
+    private List<String> filterHostnames(String wikiId, List<String> extractedHostnames) {
+        return extractedHostnames.stream()
+                .filter(Predicate.not(ignoredSuffixes::contains))
+                .collect(Collectors.collectingAndThen(
+                        Collectors.toList(),
+                        hostnames -> ignoredHostnameRepository.checkHostnames(wikiId, hostnames)
+                ))
+                .stream()
+                .filter(Predicate.not(CheckHostnameResult::existed))
+                .map(CheckHostnameResult::hostname)
+                .toList();
+    }
+
+    private Uni<Classification> classify(String wikiId, List<HostnameFeature> hostnameFeatures) {
+        // The shadow model scores the same rows in the background and is never waited on
+        var shadowClassificationResults = modelManager.getShadowModelId(wikiId)
+                .map(shadowModelId -> inferenceBatcher.classifyInBackground(hostnameFeatures, shadowModelId));
+        String modelId = modelManager.getModelId(wikiId);
+
+        // Batched rows are classified on the batcher threads, and no stage thread waits for them, so that
+        // the rows of every change in flight can share a batch; without batching, inference runs inline
+        // on the classify stage
+        Uni<List<ClassificationResult>> classificationResults = citronConfig.classifier().batching().enabled()
+                ? Uni.createFrom().completionStage(() -> inferenceBatcher.classify(hostnameFeatures, modelId))
+                : streamPipeline.classify().run(() -> inferenceBatcher.classify(hostnameFeatures, modelId).join());
+
+        return classificationResults.map(results -> new Classification(results, shadowClassificationResults));
+    }
+
+    private Void persist(ChangeContext context, List<String> extractedHostnames, Classification classification) {
+        // Reports with IDs from a node another replica now holds could clash with its own, and be ignored
+        if (clusterCoordinator.hasLostNode()) {
+            throw new IllegalStateException("TSID node lease was lost, not saving reports");
+        }
+
+        var classificationResults = classification.results();
+        Instant now = Instant.now();
+        List<ReportedHostname> reportedHostnames = classificationResults.stream()
+                .map(classificationResult -> ReportedHostnameBuilder.builder()
+                        .id(tsidFactory.create().toLong())
+                        .createdAt(now)
+                        .wikiId(context.wikiId())
+                        .user(context.user())
+                        .page(context.page())
+                        .revisionId(context.revisionId())
+                        .revisionTimestamp(context.revisionTimestamp())
+                        .hostname(classificationResult.hostname())
+                        .score(BigDecimal.valueOf(classificationResult.probability())
+                                .setScale(6, RoundingMode.HALF_UP).doubleValue())
+                        .modelNumber(classificationResult.modelNumber())
+                        .build())
+                .toList();
+
+        // Hostnames already reported for this revision (e.g. replayed after a restart) are skipped
+        Set<Long> savedIds = new HashSet<>();
+        for (var reportedHostname : reportedHostnames) {
+            if (reportedHostnameRepository.save(reportedHostname)) {
+                savedIds.add(reportedHostname.id());
             }
+        }
+
+        classification.shadowResults().ifPresent(future -> future
+                .thenAcceptAsync(shadowResults -> saveShadowScores(
+                        reportedHostnames, savedIds, classificationResults, shadowResults), managedExecutor)
+                .exceptionally(e -> {
+                    Log.errorf("Unable to shadow score %s: %s", context, e.getMessage());
+                    return null;
+                }));
 
-            List<HostnameFeature> hostnameFeatures = filteredHostnames.stream()
-                    .map(hostnameFeatureCollector::collect)
-                    .toList();
-            List<ClassificationResult> classificationResults = classifier
-                    .classify(hostnameFeatures, Model.getDefaultModel());
-
-            Instant now = Instant.now();
-            List<ReportedHostname> reportedHostnames = classificationResults.stream()
-                    .map(classificationResult -> ReportedHostnameBuilder.builder()
-                            .id(tsidFactory.create().toLong())
-                            .createdAt(now)
-                            .wikiId(change.wiki())
-                            .user(change.user())
-                            .page(change.title())
-                            .revisionId(change.revision()._new())
-                            .revisionTimestamp(change.timestamp())
-                            .hostname(classificationResult.hostname())
-                            .score(BigDecimal.valueOf(classificationResult.probability())
-                                    .setScale(6, RoundingMode.HALF_UP).doubleValue())
-                            .modelNumber(Model.getDefaultModel().getNumber())
-                            .build())
-                    .toList();
-
-            for (var reportedHostname : reportedHostnames) {
-                reportedHostnameRepository.save(reportedHostname);
+        Log.infof("Processed %s: Extracted: (%s) %s; Reported: (%s) %s",
+                context,
+                extractedHostnames.size(), extractedHostnames,
+                reportedHostnames.size(), reportedHostnames.stream()
+                        .map(hostname -> "%s (%s)".formatted(hostname.hostname(), hostname.score()))
+                        .toList());
+
+        return null;
+    }
+
+    private void saveShadowScores(List<ReportedHostname> reportedHostnames,
+                                  Set<Long> savedIds,
+                                  List<ClassificationResult> classificationResults,
+                                  List<ClassificationResult> shadowClassificationResults) {
+        for (int i = 0; i < reportedHostnames.size(); i++) {
+            var reportedHostname = reportedHostnames.get(i);
+            if (!savedIds.contains(reportedHostname.id())) {
+                continue;
             }
+            var classificationResult = classificationResults.get(i);
+            var shadowClassificationResult = shadowClassificationResults.get(i);
 
-            Log.infof("Processed Change(wiki=%s, user=%s, page=%s, revision=%s, type=%s): Extracted: (%s) %s; Reported: (%s) %s",
-                    change.wiki(), change.user(), change.title(), change.revision()._new(), change.type(),
-                    extractedHostnames.size(), extractedHostnames,
-                    reportedHostnames.size(), reportedHostnames.stream()
-                            .map(hostname -> "%s (%s)".formatted(hostname.hostname(), hostname.score()))
-                            .toList());
-        } catch (Exception e) {
-            Log.errorf("Unable to process Change(wiki=%s, user=%s, page=%s, revision=%s, type=%s): %s",
-                    change.wiki(), change.user(), change.title(), change.revision()._new(), change.type(), e.getMessage());
+            shadowScoreRepository.save(ShadowScoreBuilder.builder()
+                    .reportedHostnameId(reportedHostname.id())
+                    .createdAt(reportedHostname.createdAt())
+                    .wikiId(reportedHostname.wikiId())
+                    .hostname(reportedHostname.hostname())
+                    .activeScore(reportedHostname.score())
+                    .activeModelNumber(reportedHostname.modelNumber())
+                    .activeLatencyMicros(classificationResult.latencyMicros())
+                    .shadowScore(BigDecimal.valueOf(shadowClassificationResult.probability())
+                            .setScale(6, RoundingMode.HALF_UP).doubleValue())
+                    .shadowModelNumber(shadowClassificationResult.modelNumber())
+                    .shadowLatencyMicros(shadowClassificationResult.latencyMicros())
+                    .build());
         }
     }
 
-    private Change parse(String json) {
+    private <T> T parse(String json, Class<T> type) {
         try {
-            return objectMapper.readValue(json, Change.class);
+            return objectMapper.readValue(json, type);
         } catch (Exception e) {
             Log.errorf("Failed to parse the change: %s", e.getMessage());
             return null;
         }
     }
 
-    @CacheResult(cacheName = "user-groups-cache")
-    protected UserGroupsResponse getCachedUserGroups(String wikiServerName, String username) {
-        return wikiActionClientManager.getClient(wikiServerName).getUserGroups(username);
+    // Misses are batched with those of other changes on the same wiki by the coalescer
+    private Uni<List<String>> getCachedUserGroups(String wikiServerName, String username) {
+        return userGroupsCache.getAsync(new CompositeCacheKey(wikiServerName, username),
+                key -> userGroupsCoalescer.getUserGroups(wikiServerName, username));
     }
 
-    private boolean isIgnoredUser(String wikiId, String wikiServerName, String username) {
+    private Uni<Boolean> isIgnoredUser(String wikiId, String wikiServerName, String username) {
         if (Helper.isIP(username)) {
-            return false;
+            return Uni.createFrom().item(false);
+        }
+
+        if (privilegedUserIndex.contains(wikiId, username)) {
+            return Uni.createFrom().item(true);
         }
 
         List<String> ignoredUserGroups = citronConfig.spamModule().wikis().get(wikiId).ignoredUserGroups();
 
-        try {
-            var userGroupsResponse = getCachedUserGroups(wikiServerName, username);
-            List<String> userGroups = userGroupsResponse.query().users().getFirst().groups();
-            return ignoredUserGroups.stream().anyMatch(userGroups::contains);
-        } catch (Exception e) {
-            Log.errorf("Unable to retrieve user groups for %s on %s: %s", username, wikiId, e.getMessage());
-            return false;
+        return getCachedUserGroups(wikiServerName, username)
+                .map(userGroups -> ignoredUserGroups.stream().anyMatch(userGroups::contains))
+                .onFailure().recoverWithItem(e -> {
+                    Log.errorf("Unable to retrieve user groups for %s on %s: %s", username, wikiId, e.getMessage());
+                    return false;
+                });
+    }
+
+    private Uni<Boolean> isIgnoredUser(String wikiId, String wikiServerName, PageLinksChange.Performer performer) {
+        // Anonymous and temporary users have no groups worth checking
+        if (performer.userId() == null || performer.userId() == 0) {
+            return Uni.createFrom().item(false);
+        }
+
+        if (performer.userGroups() == null) {
+            return isIgnoredUser(wikiId, wikiServerName, performer.userText());
         }
+
+        List<String> ignoredUserGroups = citronConfig.spamModule().wikis().get(wikiId).ignoredUserGroups();
+        return Uni.createFrom().item(ignoredUserGroups.stream().anyMatch(performer.userGroups()::contains));
     }
 
-    private boolean isWithinLast5Minutes(long timestamp) {
+    // A catch-up subscription replays changes the previous holder of its shards had not finished,
+    // so it stays on the catch-up age until it is done
+    private boolean isWithinMaxAge(StreamSubscription subscription, long timestamp) {
+        if (!subscription.record(timestamp)) {
+            return false;
+        }
+
         long currentTimestamp = Instant.now().getEpochSecond();
-        return currentTimestamp - timestamp <= 5 * 60 && currentTimestamp >= timestamp;
+        long age = currentTimestamp - timestamp;
+        long maxEventAge = citronConfig.spamModule().maxEventAge().toSeconds();
+        var catchingUp = subscription.catchingUp();
+
+        if (subscription.isLive() && catchingUp.get() && age <= maxEventAge && catchingUp.compareAndSet(true, false)) {
+            Log.info("Caught up on EventStreams");
+        }
+
+        long maxAge = catchingUp.get() ? citronConfig.spamModule().maxCatchUpAge().toSeconds() : maxEventAge;
+        return age <= maxAge && currentTimestamp >= timestamp;
     }
 
 }
@@ -0,0 +1,132 @@
+package io.github.plantaest.citron.runner;
+
+import io.smallrye.mutiny.subscription.Cancellable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One connection to EventStreams and how far it got. The live subscription handles every shard the
+// replica holds. A catch-up subscription replays shards taken over from another replica, from their
+// checkpoint until it is past the point where the live subscription started handling them, so that
+// the changes the previous holder had not finished are not lost; changes seen by both are reported
+// once thanks to the unique index on reported hostnames.
+final class StreamSubscription {
+
+    // Changes this far past the hand-over point have also been seen by the live subscription,
+    // even if the stream delivered a few of them out of order
+    private static final long HANDOVER_OVERLAP_SECONDS = 30;
+
+    private final String name;
+    // Null for the live subscription itself
+    private final StreamSubscription live;
+    private final Set<Integer> shards;
+    // Newest change timestamp the live subscription had seen when the shards were taken over,
+    // or 0 when they were taken over before it saw any, in which case its first change counts
+    private final long handoverTimestamp;
+    // Set while replaying events missed during a restart or reconnect
+    private final AtomicBoolean catchingUp;
+    private final AtomicLong eventCounter = new AtomicLong(0);
+    private final AtomicLong firstEventTimestamp = new AtomicLong(0);
+    private final AtomicLong lastEventTimestamp = new AtomicLong(0);
+    // Replaced on every reconnect, since cancelling the changes in flight completes them in the old one
+    private volatile EventWatermark watermark;
+    private volatile Cancellable cancellable;
+    private volatile boolean finished;
+
+    private StreamSubscription(String name, StreamSubscription live, Set<Integer> shards, String startEventId) {
+        this.name = name;
+        this.live = live;
+        this.shards = shards;
+        this.handoverTimestamp = live != null ? live.lastEventTimestamp.get() : 0;
+        this.catchingUp = new AtomicBoolean(startEventId != null);
+        this.watermark = new EventWatermark(startEventId);
+    }
+
+    static StreamSubscription live(String startEventId) {
+        return new StreamSubscription("live", null, Set.of(), startEventId);
+    }
+
+    static StreamSubscription catchUp(StreamSubscription live, Set<Integer> shards, String startEventId) {
+        Set<Integer> caughtUpShards = ConcurrentHashMap.newKeySet();
+        caughtUpShards.addAll(shards);
+        return new StreamSubscription("catch-up of shards " + shards, live, caughtUpShards, startEventId);
+    }
+
+    boolean isLive() {
+        return live == null;
+    }
+
+    // Shards a catch-up subscription still replays; empty for the live subscription
+    Set<Integer> shards() {
+        return shards;
+    }
+
+    // A catch-up subscription stops replaying once none of its shards is held anymore
+    void removeShard(int shard) {
+        shards.remove(shard);
+        if (!isLive() && shards.isEmpty()) {
+            finished = true;
+        }
+    }
+
+    // Records the timestamp of a change and returns whether this subscription still handles changes;
+    // a catch-up subscription finishes at the first change well past the hand-over point
+    boolean record(long timestamp) {
+        firstEventTimestamp.compareAndSet(0, timestamp);
+        lastEventTimestamp.accumulateAndGet(timestamp, Math::max);
+
+        if (!isLive() && !finished) {
+            long handover = handoverTimestamp > 0 ? handoverTimestamp : live.firstEventTimestamp.get();
+            if (handover > 0 && timestamp > handover + HANDOVER_OVERLAP_SECONDS) {
+                finished = true;
+            }
+        }
+
+        return !finished;
+    }
+
+    // Finished catch-up subscriptions skip everything; they are closed once their last changes are done
+    boolean isFinished() {
+        return finished;
+    }
+
+    String name() {
+        return name;
+    }
+
+    AtomicBoolean catchingUp() {
+        return catchingUp;
+    }
+
+    AtomicLong eventCounter() {
+        return eventCounter;
+    }
+
+    long lastEventTimestamp() {
+        return lastEventTimestamp.get();
+    }
+
+    EventWatermark watermark() {
+        return watermark;
+    }
+
+    // Starts a new watermark from the given event, once the connection whose changes were tracked in the
+    // current one is cancelled
+    void resetWatermark(String startEventId) {
+        watermark = new EventWatermark(startEventId);
+    }
+
+    void setCancellable(Cancellable cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    void cancel() {
+        var current = cancellable;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+}
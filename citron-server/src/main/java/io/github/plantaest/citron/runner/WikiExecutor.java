@@ -0,0 +1,48 @@
+package io.github.plantaest.citron.runner;
+
+import io.github.plantaest.citron.config.CitronConfig;
+import io.github.plantaest.citron.enumeration.ThreadMode;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Runs the per-wiki work of the report and feedback runners. Each wiki spends most of its time
+// waiting on the wiki APIs, so in virtual thread mode the wikis are handled side by side,
+// up to max-concurrent-wikis at a time; in platform mode they run one after another as before.
+@Singleton
+public class WikiExecutor {
+
+    @Inject
+    CitronConfig citronConfig;
+
+    // Returns once every wiki has been handled; the task is expected to deal with its own failures
+    public void forEach(String taskName, Collection<CitronConfig.SpamModule.Wiki> wikis,
+                        Consumer<CitronConfig.SpamModule.Wiki> task) {
+        if (citronConfig.execution().threadMode() != ThreadMode.VIRTUAL || wikis.size() < 2) {
+            wikis.forEach(task);
+            return;
+        }
+
+        var permits = new Semaphore(citronConfig.execution().maxConcurrentWikis());
+        var threadFactory = Thread.ofVirtual().name(taskName + "-", 0).factory();
+
+        // Closing the executor waits for all submitted wikis
+        try (var executor = Executors.newThreadPerTaskExecutor(threadFactory)) {
+            for (var wiki : wikis) {
+                executor.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        task.accept(wiki);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package io.github.plantaest.citron.config.model;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Checks the pure-Java evaluator against onnxruntime on the bundled model, with the same fixtures
+// ModelManager checks at startup, so a change that breaks parity fails the build instead of silently
+// falling back to onnxruntime in production.
+class TreeEnsembleEvaluatorTest {
+
+    private static final String MODEL_PATH = "model/citron_spam_viwiki_model_v1.onnx";
+    private static final long[] SEEDS = {20241229L, 1L, 42L};
+
+    private static TreeEnsembleEvaluator evaluator;
+    private static LoadedModel loadedModel;
+    private static int columns;
+
+    @BeforeAll
+    static void load() throws IOException, OrtException {
+        byte[] modelBytes;
+        try (var inputStream = TreeEnsembleEvaluatorTest.class.getClassLoader().getResourceAsStream(MODEL_PATH)) {
+            assertNotNull(inputStream, "Bundled model not found: " + MODEL_PATH);
+            modelBytes = inputStream.readAllBytes();
+        }
+
+        evaluator = TreeEnsembleEvaluator.compile(ByteBuffer.wrap(modelBytes));
+
+        // Parity is only promised with one intra-op thread, as in the shipped configuration
+        try (var sessionOptions = new OrtSession.SessionOptions()) {
+            sessionOptions.setIntraOpNumThreads(1);
+            sessionOptions.setInterOpNumThreads(1);
+            var session = OrtEnvironment.getEnvironment().createSession(modelBytes, sessionOptions);
+            loadedModel = new LoadedModel("viwiki_model_v1", 1, session);
+        }
+
+        columns = loadedModel.inputColumns() > 0 ? loadedModel.inputColumns() : evaluator.featureCount();
+    }
+
+    @AfterAll
+    static void close() throws OrtException {
+        if (loadedModel != null) {
+            loadedModel.close();
+        }
+    }
+
+    @Test
+    void matchesOnnxRuntimeOnBatches() throws OrtException {
+        for (long seed : SEEDS) {
+            float[][] fixtures = evaluator.parityFixtures(columns, seed);
+            var batch = allocate(fixtures.length);
+            for (float[] row : fixtures) {
+                batch.put(row);
+            }
+            batch.flip();
+
+            assertSamePredictions(
+                    loadedModel.runSession(batch, fixtures.length, columns),
+                    LoadedModel.evaluate(evaluator, batch, fixtures.length, columns),
+                    "seed " + seed);
+        }
+    }
+
+    @Test
+    void matchesOnnxRuntimeOnSingleRows() throws OrtException {
+        float[][] fixtures = evaluator.parityFixtures(columns, SEEDS[0]);
+        var single = allocate(1);
+
+        for (int i = 0; i < fixtures.length; i++) {
+            single.clear();
+            single.put(fixtures[i]);
+            single.flip();
+
+            assertSamePredictions(
+                    loadedModel.runSession(single, 1, columns),
+                    LoadedModel.evaluate(evaluator, single, 1, columns),
+                    "fixture row " + i);
+        }
+    }
+
+    @Test
+    void matchesOnnxRuntimeOnMissingAndExtremeValues() throws OrtException {
+        float[] values = {Float.NaN, 0f, -0f, -1f, Float.MIN_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+                Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        var rows = allocate(values.length);
+
+        for (float value : values) {
+            for (int column = 0; column < columns; column++) {
+                rows.put(value);
+            }
+        }
+        rows.flip();
+
+        assertSamePredictions(
+                loadedModel.runSession(rows, values.length, columns),
+                LoadedModel.evaluate(evaluator, rows, values.length, columns),
+                "uniform rows");
+    }
+
+    private static void assertSamePredictions(Predictions expected, Predictions actual, String fixture) {
+        assertEquals(expected.labels().length, actual.labels().length, fixture);
+
+        for (int i = 0; i < expected.labels().length; i++) {
+            assertEquals(expected.labels()[i], actual.labels()[i], "Label of row %d, %s".formatted(i, fixture));
+            // Compared bit for bit, as ModelManager does before serving the model from the evaluator
+            assertEquals(Float.floatToIntBits(expected.probabilities()[i]),
+                    Float.floatToIntBits(actual.probabilities()[i]),
+                    "Probability of row %d, %s: expected %s but got %s".formatted(
+                            i, fixture, expected.probabilities()[i], actual.probabilities()[i]));
+        }
+    }
+
+    private static FloatBuffer allocate(int rows) {
+        return ByteBuffer.allocateDirect(rows * columns * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+}
@@ -0,0 +1,229 @@
+package io.github.plantaest.citron.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.plantaest.citron.dto.CompareRevisionsResponse;
+import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff;
+import io.github.plantaest.citron.dto.CompareRevisionsResponse.Diff.HighlightRange;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Checks DiffLineScanner and DiffHostnameDecoder against the String-based extraction they replaced,
+// kept here as the oracle: highlight ranges are byte offsets into the UTF-8 encoded line, so random
+// Vietnamese lines with ranges falling anywhere, including inside multibyte characters, exercise the
+// encoding, the zero byte removal and the decoding of broken sequences on both sides.
+class DiffLineScannerTest {
+
+    private static final int RANDOM_LINES = 50_000;
+    private static final int RANDOM_COMPARISONS = 2_000;
+
+    private static final String[] PIECES = {
+            "Hà Nội ", "tiếng Việt ", "Nguyễn Thị Minh Khai ", "ạ", "ữ", "đ", "a\u0301", "\u0323", "😀",
+            "\uD83D", "\uDE00", "\u0000", " ", "\n", "|", "=", "{{", "}}", "[", "]", "<ref>", "</ref>",
+            "https://example.com/a ", "http://vnexpress.net/thoi-su.html", "https://Báo.vn/", "[//tuoitre.vn x]",
+            "{{URL|dantri.com.vn}}", "{{chú thích web|url=thanhnien.vn/a|tiêu đề=Tin}}", "www.", ".vn", "http://",
+    };
+    private static final int[] LINE_TYPES = {0, 1, 2, 3, 4, 5};
+
+    @Test
+    void matchesStringExtractionOnKnownLines() {
+        String text = "Xem [https://vnexpress.net/a Tin] và [https://tuoitre.vn/b Báo] ở Hà Nội";
+        int vnexpress = byteOffset(text, "[https://vnexpress");
+        int tuoitre = byteOffset(text, "[https://tuoitre");
+
+        assertSameHostnames(1, text, null);
+        assertSameHostnames(3, text, List.of(new HighlightRange(tuoitre, 27, 0)));
+        assertSameHostnames(3, text, List.of(new HighlightRange(tuoitre, 27, 0), new HighlightRange(vnexpress, 30, 1)));
+        assertSameHostnames(5, text, List.of(new HighlightRange(vnexpress, 30, 0)));
+        // Type 1 ranges only: nothing was added
+        assertSameHostnames(3, text, List.of(new HighlightRange(vnexpress, 30, 1)));
+        // Ranges cutting through the two bytes of "à" and the three of "ộ"
+        assertSameHostnames(3, text, List.of(new HighlightRange(byteOffset(text, "à") + 1, 1, 0),
+                new HighlightRange(byteOffset(text, "ộ") + 1, 2, 1)));
+        assertSameHostnames(3, "\u0000https://example.com/\u0000", List.of(new HighlightRange(0, 1, 0)));
+        assertSameHostnames(3, "\uD83Dhttps://example.com/", List.of(new HighlightRange(0, 1, 0)));
+        assertSameHostnames(3, "   ", List.of(new HighlightRange(0, 1, 0)));
+        assertSameHostnames(2, text, List.of(new HighlightRange(0, 4, 0)));
+    }
+
+    @Test
+    void matchesStringExtractionOnRandomLines() {
+        var random = RandomText.random();
+
+        for (int n = 0; n < RANDOM_LINES; n++) {
+            String text = RandomText.of(random, PIECES, 12);
+            assertSameHostnames(LINE_TYPES[random.nextInt(LINE_TYPES.length)], text, randomRanges(random, text));
+        }
+    }
+
+    @Test
+    void decoderMatchesStringExtractionOnRandomComparisons() throws Exception {
+        var random = RandomText.random();
+        var objectMapper = new ObjectMapper();
+        var decoder = new DiffHostnameDecoder();
+        decoder.objectMapper = objectMapper;
+
+        for (int n = 0; n < RANDOM_COMPARISONS; n++) {
+            List<Diff> diffs = new ArrayList<>();
+            int lines = random.nextInt(8);
+            for (int i = 0; i < lines; i++) {
+                String text = RandomText.of(random, PIECES, 12);
+                diffs.add(new Diff(LINE_TYPES[random.nextInt(LINE_TYPES.length)], i + 1, null, text,
+                        new Diff.Offset(0, 0), randomRanges(random, text)));
+            }
+
+            var revision = new CompareRevisionsResponse.Revision(n, "main", List.of());
+            byte[] comparison = objectMapper.writeValueAsBytes(new CompareRevisionsResponse(revision, revision, diffs));
+
+            assertEquals(extractHostnames(extractAddedDiffComparisons(diffs)), decoder.extractHostnames(comparison));
+        }
+    }
+
+    private static void assertSameHostnames(int type, String text, List<HighlightRange> highlightRanges) {
+        Set<String> expected = new TreeSet<>();
+        var diffComparison = extractAddedDiffComparison(type, text, highlightRanges);
+        if (diffComparison != null) {
+            addAddedHostnames(diffComparison, expected);
+        }
+
+        Set<String> actual = new TreeSet<>();
+        DiffLineScanner.addAddedHostnames(type, text, highlightRanges, actual);
+
+        assertEquals(expected, actual, "type %d, ranges %s, text %s".formatted(type, highlightRanges, text));
+    }
+
+    // Ranges stay within the encoded line, as MediaWiki's do, but may overlap and split characters
+    private static List<HighlightRange> randomRanges(Random random, String text) {
+        int length = text.getBytes(StandardCharsets.UTF_8).length;
+        int count = random.nextInt(5);
+
+        if (count == 0) {
+            return random.nextBoolean() ? null : List.of();
+        }
+
+        List<HighlightRange> highlightRanges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int start = random.nextInt(length + 1);
+            highlightRanges.add(new HighlightRange(start, random.nextInt(length - start + 1), random.nextInt(2)));
+        }
+        return highlightRanges;
+    }
+
+    private static int byteOffset(String text, String part) {
+        return text.substring(0, text.indexOf(part)).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // Helper's String-based extraction before DiffLineScanner and DiffHostnameDecoder took its place
+
+    private record DiffComparison(String oldText, String newText) {}
+
+    private static List<DiffComparison> extractAddedDiffComparisons(List<Diff> diffs) {
+        List<DiffComparison> diffComparisons = new ArrayList<>();
+
+        for (var diff : diffs) {
+            var diffComparison = extractAddedDiffComparison(diff.type(), diff.text(), diff.highlightRanges());
+            if (diffComparison != null) {
+                diffComparisons.add(diffComparison);
+            }
+        }
+
+        return diffComparisons;
+    }
+
+    private static DiffComparison extractAddedDiffComparison(int type, String text,
+                                                             List<HighlightRange> highlightRanges) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+
+        if (type == 1) {
+            return new DiffComparison(null, text);
+        }
+
+        highlightRanges = Optional.ofNullable(highlightRanges).orElse(List.of());
+
+        if (highlightRanges.isEmpty()) {
+            return null;
+        }
+
+        if (type == 3 || type == 5) {
+            boolean hasTypeZero = highlightRanges.stream().anyMatch(range -> range.type() == 0);
+            boolean allTypeZero = highlightRanges.stream().allMatch(range -> range.type() == 0);
+            List<HighlightRange> additionHighlightRanges = highlightRanges.stream()
+                    .filter(range -> range.type() == 0)
+                    .toList();
+            List<HighlightRange> deletionHighlightRanges = highlightRanges.stream()
+                    .filter(range -> range.type() == 1)
+                    .toList();
+
+            if (hasTypeZero) {
+                if (allTypeZero) {
+                    return new DiffComparison(
+                            eliminateDiffTextByHighlightRanges(text, additionHighlightRanges),
+                            text
+                    );
+                } else {
+                    return new DiffComparison(
+                            eliminateDiffTextByHighlightRanges(text, additionHighlightRanges),
+                            eliminateDiffTextByHighlightRanges(text, deletionHighlightRanges)
+                    );
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static String eliminateDiffTextByHighlightRanges(String text, List<HighlightRange> highlightRanges) {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+
+        for (var range : highlightRanges) {
+            for (int i = range.start(); i < range.start() + range.length(); i++) {
+                textBytes[i] = 0;
+            }
+        }
+
+        int length = 0;
+        for (byte b : textBytes) {
+            if (b != 0) {
+                textBytes[length++] = b;
+            }
+        }
+
+        return new String(textBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> extractHostnames(List<DiffComparison> addedDiffComparisons) {
+        Set<String> extractedHostnames = new TreeSet<>();
+
+        for (DiffComparison diffComparison : addedDiffComparisons) {
+            addAddedHostnames(diffComparison, extractedHostnames);
+        }
+
+        return extractedHostnames.stream().toList();
+    }
+
+    private static void addAddedHostnames(DiffComparison diffComparison, Set<String> extractedHostnames) {
+        if (diffComparison.newText() != null) {
+            if (diffComparison.oldText() == null) {
+                extractedHostnames.addAll(Helper.extractHostnamesFromText(diffComparison.newText()));
+            } else {
+                Set<String> hostnamesFromOldText = Helper.extractHostnamesFromText(diffComparison.oldText());
+                Set<String> hostnamesFromNewText = Helper.extractHostnamesFromText(diffComparison.newText());
+                extractedHostnames.addAll(hostnamesFromNewText.stream()
+                        .filter(Predicate.not(hostnamesFromOldText::contains))
+                        .toList());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package io.github.plantaest.citron.helper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// ExternalLinkScanner against the regex and java.net.URI extraction it replaced, on wikitext of
+// Vietnamese prose with references, the shape of a new page's source. Run with:
+// ./mvnw test-compile exec:java -Dexec.classpathScope=test
+//     -Dexec.mainClass=io.github.plantaest.citron.helper.ExternalLinkScannerBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalLinkScannerBenchmark {
+
+    private static final String PARAGRAPH = """
+            '''Hà Nội''' là thủ đô của nước [[Cộng hòa xã hội chủ nghĩa Việt Nam]], nằm ở đồng bằng sông Hồng.\
+            <ref>{{chú thích web|url=https://www.gso.gov.vn/du-lieu-va-so-lieu-thong-ke/|tiêu đề=Niên giám \
+            thống kê|nhà xuất bản=Tổng cục Thống kê}}</ref> Thành phố có diện tích 3.359,82 km² và dân số \
+            khoảng 8,4 triệu người.<ref>[http://hanoi.gov.vn/gioi-thieu Cổng thông tin Hà Nội]</ref> Xem thêm \
+            https://vnexpress.net/thoi-su/ha-noi-123456.html, [https://Example.COM:8080/path?q=1&lang=vi#top \
+            trang ví dụ] và [//vi.wikipedia.org/wiki/Hà_Nội bài viết].
+            """;
+
+    @Param({"1", "16", "256"})
+    int paragraphs;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = PARAGRAPH.repeat(paragraphs);
+    }
+
+    @Benchmark
+    public Set<String> scan() {
+        return ExternalLinkScanner.scan(text);
+    }
+
+    @Benchmark
+    public Set<String> regexAndUri() {
+        return ExternalLinkScannerTest.extractWithRegex(text);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExternalLinkScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
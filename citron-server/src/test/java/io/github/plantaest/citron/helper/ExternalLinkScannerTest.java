@@ -0,0 +1,109 @@
+package io.github.plantaest.citron.helper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Checks ExternalLinkScanner against the regex and java.net.URI extraction it replaced, kept here
+// as the oracle, on hand-picked links and on random text made of the pieces that decide a match.
+class ExternalLinkScannerTest {
+
+    private static final Pattern HOSTNAME_PATTERN = Pattern.compile(
+            // Ref: https://stackoverflow.com/a/163398
+            "\\bhttps?://[-a-zA-Z0-9+&@#/%?=~_!:,.;]*[-a-zA-Z0-9+&@#/%=~_]\\b",
+            Pattern.MULTILINE
+    );
+
+    private static final int RANDOM_TEXTS = 200_000;
+
+    private static final String[] PIECES = {
+            "http://", "https://", "//", "HTTP://", "www.", "example", ".com", ".vn", ".", ":", "8080",
+            ":99999999999", "@", "user:pw@", "/", "?", "#", "%", "%2F", "%zz", "-", "_", "~", "!", ",", ";",
+            "&", "=", "+", "a", "Z", "0", "192.168.1.1", "256.1.1.1", "01.2.3.4", "1.2.3", "..", " ", "\n",
+            "[", "]", "|", "<", ">", "\"", "'", "(", ")", "tiếng Việt", "Nguyễn", "ạ", "\u0301", "\u0323",
+            "é", "ß", "\uD83D\uDE00", "\uD83D", "xn--abc", "-x", "x-", ".-", ".1a", "a1",
+    };
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Xem https://example.com/path?q=1 để biết thêm",
+            "[http://Example.COM Trang chủ]",
+            "http://user:pw@example.com:8080/",
+            "https://192.168.1.1/admin",
+            "https://256.1.1.1/",
+            "http://01.2.3.4/",
+            "http://example.com:99999999999/",
+            "http://example.com/%zz",
+            "http://example.com/a#b#c",
+            "http://localhost/",
+            "http://example.c/",
+            "http://example.com./",
+            "http://-example.com/",
+            "http://example-.com/",
+            "http://1a.2b/",
+            "ahttp://example.com/",
+            "_http://example.com/",
+            "http://example.com/ạ",
+            "http://example.com/a\u0301",
+            "http://example.com, http://example.org; http://example.net.",
+            "<ref>https://báo.vn/tin-tức</ref>",
+            "{{cite web|url=https://vnexpress.net/a.html|title=Tin}}",
+    })
+    void matchesRegexOnKnownLinks(String text) {
+        assertEquals(extractWithRegex(text), ExternalLinkScanner.scan(text), text);
+    }
+
+    @Test
+    void matchesRegexOnRandomText() {
+        var random = RandomText.random();
+
+        for (int n = 0; n < RANDOM_TEXTS; n++) {
+            String text = RandomText.of(random, PIECES, 30);
+            assertEquals(extractWithRegex(text), ExternalLinkScanner.scan(text), text);
+        }
+    }
+
+    @Test
+    void findsProtocolRelativeLinksOnlyWhenAsked() {
+        String text = "[//example.org nhãn] và //example.net/a";
+
+        assertEquals(Set.of(), ExternalLinkScanner.scan(text));
+        assertEquals(Set.of("example.org", "example.net"), ExternalLinkScanner.scan(text, true));
+    }
+
+    // Helper.extractHostnamesFromText before ExternalLinkScanner took its place
+    static Set<String> extractWithRegex(String text) {
+        Set<String> extractedHostnames = new TreeSet<>();
+
+        if (text.contains("http://") || text.contains("https://")) {
+            Matcher matcher = HOSTNAME_PATTERN.matcher(text);
+            while (matcher.find()) {
+                String link = matcher.group();
+                try {
+                    URI uri = new URI(link);
+                    String hostname = uri.getHost();
+                    if (hostname != null && hostname.contains(".")) {
+                        String[] parts = hostname.split("\\.");
+                        if (parts.length >= 2 && parts[parts.length - 1].length() >= 2) {
+                            extractedHostnames.add(hostname.toLowerCase());
+                        }
+                    }
+                } catch (URISyntaxException e) {
+                    // Dropped, as before
+                }
+            }
+        }
+
+        return extractedHostnames;
+    }
+
+}
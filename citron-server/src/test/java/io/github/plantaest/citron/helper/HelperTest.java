@@ -0,0 +1,149 @@
+package io.github.plantaest.citron.helper;
+
+import com.google.common.net.InetAddresses;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checks the IP literal parser behind Helper.isIP on hand-picked forms, then against Guava's parser,
+// which never resolves names either, on random inputs. Zone IDs are left out of the comparison, as
+// Guava only accepts the names of interfaces present on the machine running it.
+class HelperTest {
+
+    private static final int RANDOM_INPUTS = 200_000;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0.0.0.0",
+            "1.2.3.4",
+            "255.255.255.255",
+            "2001:db8:0:0:8:800:200c:417a",
+            "2001:DB8:0:0:8:800:200C:417A",
+            "::",
+            "::1",
+            "1::",
+            "2001:db8::1",
+            "1:2:3:4:5:6:7::",
+            "::2:3:4:5:6:7:8",
+            "::ffff:192.0.2.128",
+            "64:ff9b::192.0.2.33",
+            "1:2:3:4:5:6:1.2.3.4",
+            "::1.2.3.4",
+            "fe80::1%eth0",
+            "fe80::1%25",
+            "[::1]",
+            "[2001:db8::1]",
+            "[::ffff:192.0.2.128]",
+            "[fe80::1%eth0]",
+    })
+    void acceptsIpLiterals(String str) {
+        assertTrue(Helper.isIP(str), str);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "1.2.3",
+            "1.2.3.4.5",
+            "256.1.1.1",
+            "01.2.3.4",
+            "1.2.3.",
+            ".1.2.3",
+            "1..2.3",
+            " 1.2.3.4",
+            "1.2.3.4 ",
+            "1.2.3.4%eth0",
+            "[1.2.3.4]",
+            ":",
+            ":::",
+            "1:::2",
+            "1::2::3",
+            ":1::2",
+            "1::2:",
+            "12345::1",
+            "1:2:3:4:5:6:7",
+            "1:2:3:4:5:6:7:8:9",
+            "1:2:3:4:5:6:7:8::",
+            "1:2:3:4:5:6:7:1.2.3.4",
+            "::1.2.3.04",
+            "::256.1.1.1",
+            "g::1",
+            "fe80::1%",
+            "[::1",
+            "::1]",
+            "[]",
+            "example.com",
+            "localhost",
+            "Mr.Example",
+            "Cafe::Bar",
+    })
+    void rejectsEverythingElse(String str) {
+        assertFalse(Helper.isIP(str), str);
+    }
+
+    @Test
+    void rejectsNull() {
+        assertFalse(Helper.isIP(null));
+        assertFalse(Helper.isIPv4(null));
+    }
+
+    @Test
+    void matchesGuavaOnRandomCharacters() {
+        var random = RandomText.random();
+        String alphabet = "0123456789abcdefABCDEF:.";
+
+        for (int n = 0; n < RANDOM_INPUTS; n++) {
+            var str = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                // Colons and dots are drawn more often so that near-valid forms come up
+                int pick = random.nextInt(10);
+                str.append(pick < 4 ? ':' : pick < 5 ? '.' : alphabet.charAt(random.nextInt(alphabet.length() - 2)));
+            }
+            assertSameAsGuava(str.toString());
+        }
+    }
+
+    @Test
+    void matchesGuavaOnRandomGroups() {
+        var random = RandomText.random();
+
+        for (int n = 0; n < RANDOM_INPUTS; n++) {
+            var str = new StringBuilder();
+            int groups = random.nextInt(10);
+            int compressedAt = random.nextInt(groups + 2) - 1;
+
+            for (int i = 0; i < groups; i++) {
+                if (i > 0) {
+                    str.append(':');
+                }
+                if (i == compressedAt) {
+                    str.append(':');
+                }
+                if (i == groups - 1 && random.nextInt(4) == 0) {
+                    str.append(random.nextInt(300)).append('.').append(random.nextInt(300)).append('.')
+                            .append(random.nextInt(3)).append('.').append(random.nextInt(10));
+                    break;
+                }
+                str.append(Integer.toHexString(random.nextInt(random.nextBoolean() ? 0x10000 : 0x100000)));
+            }
+            if (compressedAt == groups) {
+                str.append("::");
+            }
+
+            assertSameAsGuava(str.toString());
+        }
+    }
+
+    private static void assertSameAsGuava(String str) {
+        assertEquals(InetAddresses.isInetAddress(str), Helper.isIP(str), str);
+        // Brackets are only allowed around IPv6 literals, as in URIs
+        assertEquals(InetAddresses.isUriInetAddress("[" + str + "]"), Helper.isIP("[" + str + "]"), "[" + str + "]");
+        assertEquals(InetAddresses.isInetAddress(str) && str.indexOf(':') < 0, Helper.isIPv4(str), str);
+    }
+
+}
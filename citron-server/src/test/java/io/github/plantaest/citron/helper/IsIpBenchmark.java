@@ -0,0 +1,82 @@
+package io.github.plantaest.citron.helper;
+
+import com.google.common.net.InetAddresses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Helper.isIP against Guava's literal parser and the IPv4 pattern it replaced, on the mix of usernames
+// the stream sees. The InetAddress.getByName lookup used before is left out, as it resolves usernames
+// over DNS. Run with:
+// ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.github.plantaest.citron.helper.IsIpBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsIpBenchmark {
+
+    private static final Pattern IPV4_PATTERN = Pattern.compile(
+            "^(25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9]?[0-9])(\\.(25[0-5]|2[0-4][0-9]|1[0-9]{2}|[1-9]?[0-9])){3}$"
+    );
+
+    private final String[] usernames = {
+            "Plantaest",
+            "Nguyễn Văn A",
+            "Mr.Example",
+            "~2024-12345",
+            "113.161.72.15",
+            "14.232.0.1",
+            "2001:ee0:4f8c:1d70:8d4a:2b3c:e1f0:9a12",
+            "2402:800:6315:a0b1::1",
+            "::ffff:192.0.2.128",
+            "Cafe::Bar",
+    };
+
+    @Benchmark
+    public void isIP(Blackhole blackhole) {
+        for (String username : usernames) {
+            blackhole.consume(Helper.isIP(username));
+        }
+    }
+
+    @Benchmark
+    public void guavaIsInetAddress(Blackhole blackhole) {
+        for (String username : usernames) {
+            blackhole.consume(InetAddresses.isInetAddress(username));
+        }
+    }
+
+    @Benchmark
+    public void isIPv4(Blackhole blackhole) {
+        for (String username : usernames) {
+            blackhole.consume(Helper.isIPv4(username));
+        }
+    }
+
+    @Benchmark
+    public void isIPv4Pattern(Blackhole blackhole) {
+        for (String username : usernames) {
+            blackhole.consume(IPV4_PATTERN.matcher(username).matches());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IsIpBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.plantaest.citron.helper;
+
+import java.util.Random;
+
+// Reproducible random input for the parity tests: text glued together from pieces each test picks
+// to land on the cases its parser has to decide, drawn from one fixed seed so failures can be replayed.
+final class RandomText {
+
+    private static final long SEED = 20241229L;
+
+    private RandomText() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    static String of(Random random, String[] pieces, int maxPieces) {
+        var text = new StringBuilder();
+        int count = random.nextInt(maxPieces);
+        for (int i = 0; i < count; i++) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return text.toString();
+    }
+
+}
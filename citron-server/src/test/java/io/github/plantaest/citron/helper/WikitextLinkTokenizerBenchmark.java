@@ -0,0 +1,96 @@
+package io.github.plantaest.citron.helper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.CharBuffer;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// What following template parameters costs on top of the plain link scan, on wikitext with citation
+// templates and an infobox, fed whole and in the chunks RevisionSourceScanner cuts. Run with:
+// ./mvnw test-compile exec:java -Dexec.classpathScope=test
+//     -Dexec.mainClass=io.github.plantaest.citron.helper.WikitextLinkTokenizerBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WikitextLinkTokenizerBenchmark {
+
+    private static final String INFOBOX = """
+            {{Thông tin công ty
+            | tên = Vinamilk
+            | image_url = Vinamilk logo.svg
+            | website = vinamilk.com.vn
+            | trụ sở = [[Thành phố Hồ Chí Minh]]
+            }}
+            """;
+
+    private static final String PARAGRAPH = """
+            '''Vinamilk''' là công ty sữa lớn nhất [[Việt Nam]].<ref>{{chú thích web|url=https://www.vinamilk.com.vn/\
+            gioi-thieu|tiêu đề=Giới thiệu|archive-url=web.archive.org/web/2024/vinamilk.com.vn|ngày truy cập=\
+            29 tháng 12 năm 2024}}</ref> Công ty niêm yết trên {{URL|hsx.vn}} từ năm 2006.<ref>{{chú thích báo|\
+            url=vnexpress.net/kinh-doanh/vinamilk-123.html|tiêu đề=Vinamilk|báo=VnExpress}}</ref> Xem thêm \
+            [//vi.wikipedia.org/wiki/Sữa bài viết] và [https://cafef.vn/vnm.chn CafeF].
+            """;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Param({"1", "16", "256"})
+    int paragraphs;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = INFOBOX + PARAGRAPH.repeat(paragraphs);
+    }
+
+    @Benchmark
+    public Set<String> tokenizer() {
+        return WikitextLinkTokenizer.extractHostnames(text);
+    }
+
+    @Benchmark
+    public Set<String> tokenizerInChunks() {
+        var tokenizer = new WikitextLinkTokenizer();
+        int start = 0;
+
+        while (start < text.length()) {
+            // Cut after a space, as RevisionSourceScanner cuts after a character no link can contain
+            int end = Math.min(start + CHUNK_SIZE, text.length());
+            int space = text.lastIndexOf(' ', end - 1);
+            if (end < text.length() && space >= start) {
+                end = space + 1;
+            }
+            tokenizer.feed(CharBuffer.wrap(text, start, end));
+            start = end;
+        }
+
+        return tokenizer.finish();
+    }
+
+    @Benchmark
+    public Set<String> externalLinkScanner() {
+        return ExternalLinkScanner.scan(text, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WikitextLinkTokenizerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,88 @@
+package io.github.plantaest.citron.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WikitextLinkTokenizerTest {
+
+    private static final int RANDOM_TEXTS = 20_000;
+
+    private static final String[] PIECES = {
+            "Hà Nội ", "tiếng Việt ", " ", "\n", "|", "=", "{{", "}}", "[[", "]]", "[", "]", "<ref>", "</ref>",
+            "https://example.com/a ", "[//tuoitre.vn x]", "{{URL|dantri.com.vn}}", "{{URL|File:Logo.png}}",
+            "{{chú thích web|url=thanhnien.vn/a|tiêu đề=Tin}}", "|url=", "|image_url=", "|website=", "url",
+            "vnexpress.net", "Foo.jpg", "/a", "Tập tin:Ảnh.png", "{{Official website|", "nhandan.vn", "http://",
+    };
+
+    @Test
+    void findsAddressesOfUrlParameters() {
+        assertHostnames("{{chú thích web|url=vnexpress.net/thoi-su|tiêu đề=Tin}}", "vnexpress.net");
+        assertHostnames("{{cite web|archive-url=web.archive.org/web/2024/a|url=https://tuoitre.vn/a}}",
+                "tuoitre.vn", "web.archive.org");
+        assertHostnames("{{cite book|chapter-url=books.google.com/x|title=Sách}}", "books.google.com");
+        assertHostnames("{{Infobox công ty|website=vinamilk.com.vn}}", "vinamilk.com.vn");
+        assertHostnames("{{URL|example.org}} và {{Official website|example.net}}", "example.net", "example.org");
+        assertHostnames("[//vi.wikipedia.org/wiki/Hà_Nội bài viết]", "vi.wikipedia.org");
+        // A template split across diff lines
+        assertHostnames("|url=dantri.com.vn/a\n|tiêu đề=Tin", "dantri.com.vn");
+    }
+
+    @Test
+    void skipsFileParameters() {
+        assertHostnames("{{Infobox|image_url=Foo.jpg}}");
+        assertHostnames("{{Infobox|logo_url=logo.svg|image url=Ảnh.png}}");
+        assertHostnames("{{Infobox|map_url=Bản đồ.png}}");
+        assertHostnames("{{cite web|url=Foo.jpg}}");
+        assertHostnames("{{URL|File:Logo.png}} {{URL|Tập tin:Logo.png}}");
+        assertHostnames("{{Infobox|thumbnail=example.org}}");
+    }
+
+    @Test
+    void keepsAddressesThatLookLikeFilesOnlyInTheirPath() {
+        assertHostnames("{{cite web|url=example.org/logo.png}}", "example.org");
+        assertHostnames("{{cite web|url=example.org:8080/a}}", "example.org");
+        assertHostnames("{{cite web|url=https://example.org/Foo.jpg}}", "example.org");
+    }
+
+    @Test
+    void findsEveryLinkExternalLinkScannerFinds() {
+        var random = RandomText.random();
+
+        for (int n = 0; n < RANDOM_TEXTS; n++) {
+            String text = RandomText.of(random, PIECES, 20);
+            Set<String> hostnames = WikitextLinkTokenizer.extractHostnames(text);
+            assertTrue(hostnames.containsAll(ExternalLinkScanner.scan(text, true)), text);
+        }
+    }
+
+    @Test
+    void givesTheSameHostnamesWhenFedInChunks() {
+        var random = RandomText.random();
+
+        for (int n = 0; n < RANDOM_TEXTS; n++) {
+            String text = RandomText.of(random, PIECES, 20);
+
+            // RevisionSourceScanner only cuts after a character no link can contain
+            var tokenizer = new WikitextLinkTokenizer();
+            int chunkStart = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == ' ' && random.nextInt(3) == 0) {
+                    tokenizer.feed(text.substring(chunkStart, i + 1));
+                    chunkStart = i + 1;
+                }
+            }
+            tokenizer.feed(text.substring(chunkStart));
+
+            assertEquals(WikitextLinkTokenizer.extractHostnames(text), tokenizer.finish(), text);
+        }
+    }
+
+    private static void assertHostnames(String text, String... hostnames) {
+        assertEquals(Set.of(hostnames), WikitextLinkTokenizer.extractHostnames(text), text);
+    }
+
+}